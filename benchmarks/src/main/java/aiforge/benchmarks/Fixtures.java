@@ -0,0 +1,87 @@
+package aiforge.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+/**
+ * Realistic inputs shared by the benchmarks.
+ */
+final class Fixtures {
+
+    private static final String[] WORDS = {
+            "agent", "memory", "task", "requirement", "summary", "purpose", "context", "user", "project", "deadline",
+            "research", "result", "analysis", "draft", "review", "plan", "idea", "source", "detail", "progress"
+    };
+
+    private Fixtures() {
+    }
+
+    static String systemPrompt() {
+        try (InputStream in = Fixtures.class.getClassLoader().getResourceAsStream("aiforge/agents/system.txt")) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return A sentence of 12 to 30 words, the size of a typical memory
+     */
+    static String memory(SplittableRandom random) {
+        StringBuilder memory = new StringBuilder();
+        int words = random.nextInt(12, 31);
+        for (int i = 0; i < words; i++) {
+            memory.append(i == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return memory.append('.').toString();
+    }
+
+    /**
+     * @return A task as the model returns it for a task creation request
+     */
+    static String taskJson() {
+        return """
+                {"title": "Write the weekly report",
+                 "description": "Summarize the progress of the research project for the user, including open questions.",
+                 "detailedRequirements": [
+                   "List the results of every analysis finished this week",
+                   "Point out each deadline that is at risk and why",
+                   "Keep the summary under one page",
+                   "Reference the source of every figure",
+                   "End with the plan for next week"]}
+                """;
+    }
+
+    /**
+     * @return The final response of a non-streaming generate call, carrying {@code contextTokens} context tokens
+     */
+    static String ollamaResponseJson(int contextTokens) {
+        SplittableRandom random = new SplittableRandom(7);
+        StringBuilder json = new StringBuilder("{\"model\":\"llama3.1\",\"created_at\":\"2024-11-02T10:15:30.123456Z\",");
+        json.append("\"response\":\"{\\\"shortTermMemory\\\": [");
+        for (int i = 0; i < 8; i++) {
+            json.append(i == 0 ? "" : ", ").append("\\\"").append(memory(random)).append("\\\"");
+        }
+        json.append("]}\",\"done\":true,\"done_reason\":\"stop\",\"context\":[");
+        for (int i = 0; i < contextTokens; i++) {
+            json.append(i == 0 ? "" : ",").append(random.nextInt(128_000));
+        }
+        return json.append("],\"total_duration\":5191566416,\"load_duration\":2154458,")
+                .append("\"prompt_eval_count\":512,\"prompt_eval_duration\":383809000,")
+                .append("\"eval_count\":298,\"eval_duration\":4799921000}")
+                .toString();
+    }
+
+    static String promptWithMemories(int memories) {
+        SplittableRandom random = new SplittableRandom(42);
+        StringBuilder prompt = new StringBuilder("Title: Write the weekly report\nDescription: Summarize progress.\n\n");
+        prompt.append("Memories:\n");
+        for (int i = 0; i < memories; i++) {
+            prompt.append("- ").append(memory(random)).append('\n');
+        }
+        return prompt.toString();
+    }
+}
@@ -0,0 +1,43 @@
+package aiforge.benchmarks;
+
+import aiforge.agents.LongTermMemory;
+import aiforge.agents.Memory;
+import aiforge.agents.MemoryStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How rendering a whole memory store scales with the number of memories it holds, spread over ten keys. Uses
+ * an unindexed long-term memory, the plainest concrete store.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MemoryStoreBenchmark {
+
+    private static final int KEYS = 10;
+
+    @Param({"100", "1000", "10000"})
+    private int memories;
+
+    private MemoryStore store;
+
+    @Setup
+    public void setUp() {
+        store = new LongTermMemory();
+        SplittableRandom random = new SplittableRandom(5);
+        for (int i = 0; i < memories; i++) {
+            store.storeMemory("agent-" + i % KEYS, new Memory(Fixtures.memory(random)));
+        }
+    }
+
+    @Benchmark
+    public String getAllMemoriesAsString() {
+        return store.getAllMemoriesAsString();
+    }
+}
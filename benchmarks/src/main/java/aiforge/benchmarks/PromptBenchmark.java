@@ -0,0 +1,66 @@
+package aiforge.benchmarks;
+
+import aiforge.agents.Agent;
+import aiforge.agents.AgentConfig;
+import aiforge.agents.HashingEmbedder;
+import aiforge.agents.LongTermMemory;
+import aiforge.agents.Memory;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building a task prompt from an agent's memories, with few and with many memories, and with long-term
+ * memory either listed in full or searched through its index.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PromptBenchmark {
+
+    // Agent.enhancePromptWithMemories is private; a method handle calls it without reflection overhead
+    private static final MethodHandle ENHANCE_PROMPT;
+
+    static {
+        try {
+            ENHANCE_PROMPT = MethodHandles.privateLookupIn(Agent.class, MethodHandles.lookup())
+                    .findVirtual(Agent.class, "enhancePromptWithMemories", MethodType.methodType(String.class, String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Param({"10", "1000"})
+    private int memories;
+
+    @Param({"false", "true"})
+    private boolean indexed;
+
+    private Agent agent;
+    private String taskPrompt;
+
+    @Setup
+    public void setUp() {
+        LongTermMemory longTermMemory = indexed ? new LongTermMemory(new HashingEmbedder()) : new LongTermMemory();
+        // The worker is never called when building prompts
+        agent = Agent.create("WorldBuildingAgent", "Develop a set of characters", null, longTermMemory, AgentConfig.defaults());
+        SplittableRandom random = new SplittableRandom(11);
+        for (int i = 0; i < memories; i++) {
+            agent.shortTermMemory().storeMemory(new Memory(i + ": " + Fixtures.memory(random)));
+            longTermMemory.storeMemory(agent.name(), new Memory(i + ": " + Fixtures.memory(random)));
+        }
+        taskPrompt = "TASK TITLE: Write the weekly report\nTASK DESCRIPTION: Summarize the progress of the project.";
+    }
+
+    @Benchmark
+    public String enhancePromptWithMemories() throws Throwable {
+        return (String) ENHANCE_PROMPT.invokeExact(agent, taskPrompt);
+    }
+}
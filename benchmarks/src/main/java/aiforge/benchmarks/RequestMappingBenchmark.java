@@ -0,0 +1,51 @@
+package aiforge.benchmarks;
+
+import aiforge.ai.AIRequest;
+import aiforge.ai.StructuredFormat;
+import aiforge.utils.OllamaRequest;
+import aiforge.utils.RequestMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning an {@link AIRequest} into the request sent to Ollama, for a fresh conversation and for a
+ * session continued from its context tokens.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestMappingBenchmark {
+
+    private static final StructuredFormat FORMAT = StructuredFormat.builder()
+            .arrayProperty("shortTermMemory", "string", true)
+            .build();
+
+    @Param({"20", "500"})
+    private int memories;
+
+    private AIRequest request;
+    private int[] context;
+
+    @Setup
+    public void setUp() {
+        request = AIRequest.of(Fixtures.systemPrompt(), Fixtures.promptWithMemories(memories), FORMAT)
+                .withTemperature(0.7)
+                .withSession("WorldBuildingAgent");
+        context = new SplittableRandom(3).ints(2048, 0, 128_000).toArray();
+    }
+
+    @Benchmark
+    public OllamaRequest map() {
+        return RequestMapper.mapToOllamaRequest(request);
+    }
+
+    @Benchmark
+    public OllamaRequest mapWithContext() {
+        return RequestMapper.mapToOllamaRequest(request, true, context);
+    }
+}
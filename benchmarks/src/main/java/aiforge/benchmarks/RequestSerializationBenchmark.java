@@ -0,0 +1,76 @@
+package aiforge.benchmarks;
+
+import aiforge.ai.AIRequest;
+import aiforge.ai.StructuredFormat;
+import aiforge.utils.Json;
+import aiforge.utils.OllamaRequest;
+import aiforge.utils.RequestMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares writing an Ollama request straight to the output stream with the previous approach of building
+ * a tree, serializing it to a String and encoding that to bytes, and measures {@link OllamaRequest#toJson()}
+ * as used for logging. Run with {@code -prof gc} to see the bytes allocated per request
+ * ({@code gc.alloc.rate.norm}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestSerializationBenchmark {
+
+    private static final StructuredFormat FORMAT = StructuredFormat.builder()
+            .arrayProperty("shortTermMemory", "string", true)
+            .build();
+
+    @Param({"20", "500"})
+    private int memories;
+
+    private OllamaRequest request;
+
+    @Setup
+    public void setUp() {
+        String system = Fixtures.systemPrompt();
+        String prompt = Fixtures.promptWithMemories(memories);
+        request = RequestMapper.mapToOllamaRequest(AIRequest.of(system, prompt, FORMAT).withTemperature(0.7), true);
+    }
+
+    @Benchmark
+    public void streaming() throws IOException {
+        request.writeTo(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public String toJson() {
+        return request.toJson();
+    }
+
+    @Benchmark
+    public void treeToString(Blackhole blackhole) throws IOException {
+        ObjectNode json = Json.MAPPER.createObjectNode();
+        json.put("model", request.model());
+        json.put("prompt", request.prompt());
+        json.set("format", Json.MAPPER.readTree(FORMAT.schemaJson()));
+        json.set("options", Json.MAPPER.readTree(request.options()));
+        json.put("system", request.system());
+        json.put("stream", request.stream());
+        if (request.context() != null) {
+            ArrayNode context = json.putArray("context");
+            for (int token : request.context()) {
+                context.add(token);
+            }
+        }
+        byte[] body = Json.MAPPER.writeValueAsString(json).getBytes(StandardCharsets.UTF_8);
+        blackhole.consume(body);
+    }
+}
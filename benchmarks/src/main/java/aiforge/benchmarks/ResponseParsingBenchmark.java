@@ -0,0 +1,49 @@
+package aiforge.benchmarks;
+
+import aiforge.agents.Task;
+import aiforge.utils.Json;
+import aiforge.utils.OllamaResponse;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of decoding Ollama's generate response, which carries the session's context tokens, and of turning the
+ * model's answer into a {@link Task}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseParsingBenchmark {
+
+    // Configured like the reader OllamaApiClient uses
+    private static final ObjectReader RESPONSE_READER = Json.MAPPER.readerFor(OllamaResponse.class);
+
+    @Param({"0", "4096"})
+    private int contextTokens;
+
+    private byte[] response;
+    private String task;
+
+    @Setup
+    public void setUp() {
+        response = Fixtures.ollamaResponseJson(contextTokens).getBytes(StandardCharsets.UTF_8);
+        task = Fixtures.taskJson();
+    }
+
+    @Benchmark
+    public OllamaResponse ollamaResponse() throws IOException {
+        return RESPONSE_READER.readValue(response);
+    }
+
+    @Benchmark
+    public Task taskFromJson() {
+        return Task.fromJson(task);
+    }
+}
@@ -0,0 +1,65 @@
+package aiforge.benchmarks;
+
+import aiforge.ai.StructuredFormat;
+import aiforge.utils.Json;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of compiling a structured-output format into its JSON schema, and of validating a response against it.
+ * Formats are compiled once and reused, so compilation only matters at startup; validation runs for every
+ * structured response.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StructuredFormatBenchmark {
+
+    private StructuredFormat taskFormat;
+    private JsonNode task;
+
+    @Setup
+    public void setUp() throws IOException {
+        taskFormat = buildTaskFormat();
+        task = Json.MAPPER.readTree(Fixtures.taskJson());
+    }
+
+    @Benchmark
+    public String compileFlat() {
+        return buildTaskFormat().schemaJson();
+    }
+
+    @Benchmark
+    public String compileNested() {
+        StructuredFormat requirement = StructuredFormat.builder()
+                .property("text", "string", true)
+                .enumProperty("priority", true, "low", "medium", "high")
+                .build();
+        return StructuredFormat.builder()
+                .property("title", "string", true)
+                .property("description", "string", true)
+                .arrayProperty("detailedRequirements", requirement, true)
+                .build()
+                .schemaJson();
+    }
+
+    @Benchmark
+    public List<String> validate() {
+        return taskFormat.validate(task);
+    }
+
+    private static StructuredFormat buildTaskFormat() {
+        return StructuredFormat.builder()
+                .property("title", "string", true)
+                .property("description", "string", true)
+                .arrayProperty("detailedRequirements", "string", true)
+                .build();
+    }
+}
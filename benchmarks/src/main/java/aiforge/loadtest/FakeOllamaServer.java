@@ -0,0 +1,378 @@
+package aiforge.loadtest;
+
+import aiforge.agents.HashingEmbedder;
+import aiforge.utils.Json;
+import aiforge.utils.OllamaResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Local stand-in for an Ollama server, so the agent stack can be load-tested without a GPU.
+ * <p>
+ * It answers {@code /api/generate} the way {@link aiforge.utils.OllamaApiClient} expects: a single JSON
+ * object, or an NDJSON chunk stream when the request asks for one. When the request carries a JSON schema
+ * {@code format}, the generated text is a random JSON value conforming to it. Like a real server it only runs
+ * {@code slots} generations at once and queues the rest; each generation waits for a prompt evaluation time
+ * drawn from the configured {@link LatencyDistribution} and then produces tokens at {@code tokensPerSecond}.
+ * A token is four characters of the response, which is roughly what real tokenizers average.
+ * <p>
+ * Each request draws its error, latency and text from a generator seeded with the configured seed, its prompt
+ * and how many times that prompt has been seen before. A prompt therefore gets the same answers in every run
+ * with the same seed, however requests for different prompts interleave; only the order in which concurrent
+ * requests with an identical prompt arrive is left to chance.
+ */
+public class FakeOllamaServer implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FakeOllamaServer.class);
+
+    private static final int CHARS_PER_TOKEN = 4;
+    private static final String[] WORDS = {
+            "river", "catfish", "current", "delta", "harbor", "lantern", "council", "elder", "reed", "mud",
+            "barge", "storm", "festival", "secret", "map", "bridge", "willow", "flood", "moon", "song",
+            "trade", "rival", "village", "channel", "levee", "heron", "legend", "promise", "journey", "shelter"};
+
+    /**
+     * @param requests   Generate requests answered
+     * @param streamed   Of those, answered as an NDJSON stream
+     * @param errors     Requests failed on purpose, see {@link Builder#errorRate(double)}
+     * @param tokens     Tokens generated
+     * @param p50SlotWait Median time a request waited for a free slot
+     * @param p99SlotWait 99th percentile of the time a request waited for a free slot
+     */
+    public record Stats(long requests, long streamed, long errors, long tokens, Duration p50SlotWait,
+                        Duration p99SlotWait) {
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("fake-ollama-", 0).factory());
+    private final Semaphore slots;
+    private final LatencyDistribution promptLatency;
+    private final long tokenIntervalNanos;
+    private final double errorRate;
+    private final long seed;
+    private final Map<String, AtomicLong> promptCounts = new ConcurrentHashMap<>();
+    private final HashingEmbedder embedder = new HashingEmbedder();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder streamed = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder tokens = new LongAdder();
+    private final LatencyRecorder slotWaits = new LatencyRecorder();
+
+    private FakeOllamaServer(Builder builder) throws IOException {
+        this.slots = new Semaphore(builder.slots, true);
+        this.promptLatency = builder.promptLatency;
+        this.tokenIntervalNanos = (long) (1e9 / builder.tokensPerSecond);
+        this.errorRate = builder.errorRate;
+        this.seed = builder.seed;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), builder.port), 1024);
+        server.setExecutor(executor);
+        server.createContext("/api/generate", this::handleGenerate);
+        server.createContext("/api/embeddings", this::handleEmbeddings);
+        server.createContext("/api/version", exchange -> respond(exchange, 200, Map.of("version", "0.0.0-fake")));
+    }
+
+    /**
+     * Start a server on an ephemeral port with default settings.
+     */
+    public static FakeOllamaServer start() throws IOException {
+        return new Builder().start();
+    }
+
+    /**
+     * @return The URL to give {@link aiforge.utils.OllamaApiClient.Builder#baseUrl(String)}
+     */
+    public String baseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    public Stats stats() {
+        return new Stats(requests.sum(), streamed.sum(), errors.sum(), tokens.sum(), slotWaits.percentile(50),
+                slotWaits.percentile(99));
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handleGenerate(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, Map.of("error", "method not allowed"));
+                return;
+            }
+            JsonNode request;
+            try {
+                request = Json.MAPPER.readTree(exchange.getRequestBody());
+            } catch (IOException e) {
+                respond(exchange, 400, Map.of("error", "invalid JSON: " + e.getMessage()));
+                return;
+            }
+            SplittableRandom requestRandom = randomFor(request.path("prompt").asText());
+            if (requestRandom.nextDouble() < errorRate) {
+                errors.increment();
+                respond(exchange, 500, Map.of("error", "injected failure"));
+                return;
+            }
+
+            long queuedAt = System.nanoTime();
+            slots.acquireUninterruptibly();
+            try {
+                slotWaits.record(System.nanoTime() - queuedAt);
+                generate(exchange, request, requestRandom);
+            } finally {
+                slots.release();
+            }
+        } catch (IOException e) {
+            // Usually the client gave up on the request
+            LOGGER.atDebug().log("Generate request aborted: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return A generator that depends only on the seed, the prompt and the number of earlier requests for it
+     */
+    private SplittableRandom randomFor(String prompt) {
+        long occurrence = promptCounts.computeIfAbsent(prompt, key -> new AtomicLong()).getAndIncrement();
+        return new SplittableRandom((seed * 31 + prompt.hashCode()) * 31 + occurrence);
+    }
+
+    private void generate(HttpExchange exchange, JsonNode request, SplittableRandom random) throws IOException {
+        requests.increment();
+        String model = request.path("model").asText("fake");
+        String text = generateText(request.get("format"), random);
+        List<String> chunks = tokenize(text);
+        tokens.add(chunks.size());
+
+        long start = System.nanoTime();
+        long promptNanos = promptLatency.sample(random).toNanos();
+        long firstTokenAt = start + promptNanos;
+        int[] context = context(request, chunks.size());
+        int promptTokens = context.length - chunks.size() - request.path("context").size();
+
+        // Ollama streams unless told otherwise
+        if (!request.path("stream").asBoolean(true)) {
+            sleepUntil(firstTokenAt + chunks.size() * tokenIntervalNanos);
+            respond(exchange, 200, new OllamaResponse(model, Instant.now().toString(), text, true, "stop", context,
+                    System.nanoTime() - start, 0, promptTokens, promptNanos, chunks.size(),
+                    chunks.size() * tokenIntervalNanos));
+            return;
+        }
+
+        streamed.increment();
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream body = exchange.getResponseBody();
+        for (int i = 0; i < chunks.size(); i++) {
+            sleepUntil(firstTokenAt + (i + 1) * tokenIntervalNanos);
+            writeLine(body, new OllamaResponse(model, Instant.now().toString(), chunks.get(i), false, null, null,
+                    0, 0, 0, 0, 0, 0));
+        }
+        writeLine(body, new OllamaResponse(model, Instant.now().toString(), "", true, "stop", context,
+                System.nanoTime() - start, 0, promptTokens, promptNanos, chunks.size(),
+                chunks.size() * tokenIntervalNanos));
+    }
+
+    private void handleEmbeddings(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            JsonNode request = Json.MAPPER.readTree(exchange.getRequestBody());
+            respond(exchange, 200, Map.of("embedding", embedder.embed(request.path("prompt").asText())));
+        }
+    }
+
+    /**
+     * @param format The request's {@code format}: a JSON schema, the string {@code json}, or null for free text
+     */
+    private static String generateText(JsonNode format, SplittableRandom random) throws IOException {
+        if (format == null || format.isNull()) {
+            return sentence(random, 20, 60);
+        }
+        if (format.isTextual()) {
+            return Json.MAPPER.writeValueAsString(Map.of("response", sentence(random, 10, 30)));
+        }
+        return Json.MAPPER.writeValueAsString(generateValue(format, random));
+    }
+
+    private static JsonNode generateValue(JsonNode schema, SplittableRandom random) {
+        JsonNode enumValues = schema.get("enum");
+        if (enumValues != null && !enumValues.isEmpty()) {
+            return enumValues.get(random.nextInt(enumValues.size()));
+        }
+        return switch (schema.path("type").asText("object")) {
+            case "string" -> Json.MAPPER.getNodeFactory().textNode(sentence(random, 8, 24));
+            case "integer" -> Json.MAPPER.getNodeFactory().numberNode(random.nextInt(1, 11));
+            case "number" -> Json.MAPPER.getNodeFactory().numberNode(Math.round(random.nextDouble(100) * 100) / 100.0);
+            case "boolean" -> Json.MAPPER.getNodeFactory().booleanNode(random.nextBoolean());
+            case "array" -> {
+                ArrayNode array = Json.MAPPER.createArrayNode();
+                int size = random.nextInt(3, 7);
+                for (int i = 0; i < size; i++) {
+                    array.add(generateValue(schema.path("items"), random));
+                }
+                yield array;
+            }
+            default -> {
+                ObjectNode object = Json.MAPPER.createObjectNode();
+                Iterator<Map.Entry<String, JsonNode>> properties = schema.path("properties").fields();
+                while (properties.hasNext()) {
+                    Map.Entry<String, JsonNode> property = properties.next();
+                    object.set(property.getKey(), generateValue(property.getValue(), random));
+                }
+                yield object;
+            }
+        };
+    }
+
+    private static String sentence(SplittableRandom random, int minWords, int maxWords) {
+        int words = random.nextInt(minWords, maxWords + 1);
+        StringBuilder sentence = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sentence.append(' ');
+            }
+            sentence.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        // Keep sentences distinct, so agents do not discard them as duplicate memories
+        return sentence.append(' ').append(Long.toHexString(random.nextLong() >>> 16)).append('.').toString();
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> chunks = new ArrayList<>(text.length() / CHARS_PER_TOKEN + 1);
+        for (int i = 0; i < text.length(); i += CHARS_PER_TOKEN) {
+            chunks.add(text.substring(i, Math.min(text.length(), i + CHARS_PER_TOKEN)));
+        }
+        return chunks;
+    }
+
+    /**
+     * @return The request's context followed by made-up token ids for its prompt and the generated response
+     */
+    private static int[] context(JsonNode request, int responseTokens) {
+        JsonNode previous = request.path("context");
+        int promptTokens = (request.path("system").asText().length() + request.path("prompt").asText().length())
+                / CHARS_PER_TOKEN;
+        int[] context = new int[previous.size() + promptTokens + responseTokens];
+        for (int i = 0; i < context.length; i++) {
+            context[i] = i < previous.size() ? previous.get(i).asInt() : i % 32000;
+        }
+        return context;
+    }
+
+    private static void sleepUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = Json.MAPPER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void writeLine(OutputStream body, OllamaResponse chunk) throws IOException {
+        body.write(Json.MAPPER.writeValueAsBytes(chunk));
+        body.write('\n');
+        body.flush();
+    }
+
+    public static class Builder {
+
+        private int port;
+        private int slots = 4;
+        private LatencyDistribution promptLatency = LatencyDistribution.logNormal(Duration.ofMillis(150), Duration.ofMillis(600));
+        private double tokensPerSecond = 50;
+        private double errorRate;
+        private long seed = 42;
+
+        /**
+         * @param port Port to listen on; 0, the default, picks a free one
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * @param slots How many requests are generated at once, like {@code OLLAMA_NUM_PARALLEL}; the rest queue
+         */
+        public Builder slots(int slots) {
+            if (slots < 1) {
+                throw new IllegalArgumentException("slots must be at least 1");
+            }
+            this.slots = slots;
+            return this;
+        }
+
+        /**
+         * @param promptLatency Time from a request getting a slot to its first token
+         */
+        public Builder promptLatency(LatencyDistribution promptLatency) {
+            this.promptLatency = promptLatency;
+            return this;
+        }
+
+        /**
+         * @param tokensPerSecond Generation speed of each slot
+         */
+        public Builder tokensPerSecond(double tokensPerSecond) {
+            if (tokensPerSecond <= 0) {
+                throw new IllegalArgumentException("tokensPerSecond must be positive");
+            }
+            this.tokensPerSecond = tokensPerSecond;
+            return this;
+        }
+
+        /**
+         * @param errorRate Fraction of generate requests answered with HTTP 500, to exercise retries
+         */
+        public Builder errorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        /**
+         * @param seed Seed for latencies, errors and generated text, so runs can be repeated
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public FakeOllamaServer start() throws IOException {
+            FakeOllamaServer fake = new FakeOllamaServer(this);
+            fake.server.start();
+            LOGGER.atInfo().log("Fake Ollama server listening on {}", fake.baseUrl());
+            return fake;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package aiforge.loadtest;
+
+import java.time.Duration;
+import java.util.random.RandomGenerator;
+
+/**
+ * How long the {@link FakeOllamaServer} takes to evaluate a prompt before it starts generating tokens.
+ */
+public interface LatencyDistribution {
+
+    Duration sample(RandomGenerator random);
+
+    static LatencyDistribution fixed(Duration latency) {
+        return random -> latency;
+    }
+
+    static LatencyDistribution uniform(Duration min, Duration max) {
+        long minNanos = min.toNanos();
+        long maxNanos = max.toNanos();
+        if (maxNanos < minNanos) {
+            throw new IllegalArgumentException("max must not be below min");
+        }
+        return random -> Duration.ofNanos(minNanos == maxNanos ? minNanos : random.nextLong(minNanos, maxNanos + 1));
+    }
+
+    static LatencyDistribution exponential(Duration mean) {
+        long meanNanos = mean.toNanos();
+        return random -> Duration.ofNanos((long) (random.nextExponential() * meanNanos));
+    }
+
+    /**
+     * A long-tailed distribution like that of real model servers: most samples are near the median and a few
+     * are much slower.
+     *
+     * @param p99 The latency 1% of samples exceed; must be above the median
+     */
+    static LatencyDistribution logNormal(Duration median, Duration p99) {
+        if (p99.compareTo(median) <= 0) {
+            throw new IllegalArgumentException("p99 must be above the median");
+        }
+        double mu = Math.log(median.toNanos());
+        // 2.326 is the 99th percentile of the standard normal distribution
+        double sigma = (Math.log(p99.toNanos()) - mu) / 2.326;
+        return random -> Duration.ofNanos((long) Math.exp(mu + sigma * random.nextGaussian()));
+    }
+
+    /**
+     * Parse a distribution from its command line form, with latencies in milliseconds:
+     * {@code fixed:200}, {@code uniform:100:400}, {@code exponential:200} or {@code lognormal:200:1000}
+     * (median and p99).
+     */
+    static LatencyDistribution parse(String spec) {
+        String[] parts = spec.split(":");
+        try {
+            return switch (parts[0]) {
+                case "fixed" -> fixed(millis(parts[1]));
+                case "uniform" -> uniform(millis(parts[1]), millis(parts[2]));
+                case "exponential" -> exponential(millis(parts[1]));
+                case "lognormal" -> logNormal(millis(parts[1]), millis(parts[2]));
+                default -> throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+            };
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed latency distribution: " + spec, e);
+        }
+    }
+
+    private static Duration millis(String value) {
+        return Duration.ofMillis(Long.parseLong(value));
+    }
+}
@@ -0,0 +1,42 @@
+package aiforge.loadtest;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Keeps every recorded latency so exact percentiles can be reported at the end of a run.
+ */
+final class LatencyRecorder {
+
+    private long[] samples = new long[1024];
+    private int count;
+
+    synchronized void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    synchronized int count() {
+        return count;
+    }
+
+    /**
+     * @param percentile Between 0 and 100
+     * @return The latency that {@code percentile}% of samples do not exceed; zero if nothing was recorded
+     */
+    synchronized Duration percentile(double percentile) {
+        if (count == 0) {
+            return Duration.ZERO;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return Duration.ofNanos(sorted[Math.max(0, Math.min(index, count - 1))]);
+    }
+
+    Duration max() {
+        return percentile(100);
+    }
+}
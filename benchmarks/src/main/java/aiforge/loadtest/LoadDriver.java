@@ -0,0 +1,196 @@
+package aiforge.loadtest;
+
+import aiforge.agents.Agent;
+import aiforge.agents.AgentOrchestrator;
+import aiforge.ai.AIRequest;
+import aiforge.ai.AIResponse;
+import aiforge.ai.AIWorker;
+import aiforge.ai.AbstractAIWorker;
+import aiforge.ai.AdmissionPolicy;
+import aiforge.ai.ConcurrencyLimiter;
+import aiforge.ai.LocalOllamaWorker;
+import aiforge.ai.SchedulerMetrics;
+import aiforge.utils.OllamaApiClient;
+import ch.qos.logback.classic.Level;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Runs many agents against a {@link FakeOllamaServer} and reports how the worker stack coped, so changes to
+ * request concurrency in {@link aiforge.ai.QueueBasedAIWorker} can be measured reproducibly.
+ * <pre>
+ * java -cp target/benchmarks.jar aiforge.loadtest.LoadDriver --agents=64 --limiter=gradient --slots=8
+ * </pre>
+ * Options, all optional:
+ * <ul>
+ *     <li>{@code --agents} (32) and {@code --iterations} (3): how many agents run and how many tasks each performs</li>
+ *     <li>{@code --limiter} ({@code fixed}, {@code aimd} or {@code gradient}), {@code --concurrency} (4, the fixed
+ *     or initial limit), {@code --max-concurrency} (64) and {@code --aimd-target-ms} (per-token latency target,
+ *     twice the server's token interval by default): how the worker limits requests in flight</li>
+ *     <li>{@code --orchestrator-calls} (64): model calls the orchestrator lets agents make at once</li>
+ *     <li>{@code --slots} (4), {@code --tokens-per-second} (50), {@code --latency} (time to first token, see
+ *     {@link LatencyDistribution#parse(String)}; {@code lognormal:150:600}), {@code --error-rate} (0) and
+ *     {@code --seed} (42): how the fake server behaves</li>
+ *     <li>{@code --verbose}: keep the agents' INFO logging, which slows down large runs considerably</li>
+ * </ul>
+ * Latency is measured per model call from submission to the worker until the response, so it includes time
+ * queued in the worker, time queued for a server slot, and generation.
+ */
+public class LoadDriver {
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = parseOptions(args);
+        int agentCount = intOption(options, "agents", 32);
+        int iterations = intOption(options, "iterations", 3);
+        int concurrency = intOption(options, "concurrency", 4);
+        int maxConcurrency = intOption(options, "max-concurrency", 64);
+        int slots = intOption(options, "slots", 4);
+        double tokensPerSecond = Double.parseDouble(options.getOrDefault("tokens-per-second", "50"));
+        String limiterName = options.getOrDefault("limiter", "fixed");
+
+        if (!options.containsKey("verbose")) {
+            ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("aiforge")).setLevel(Level.WARN);
+        }
+
+        ConcurrencyLimiter limiter = switch (limiterName) {
+            case "fixed" -> ConcurrencyLimiter.fixed(concurrency);
+            case "aimd" -> ConcurrencyLimiter.aimd(concurrency, maxConcurrency, Duration.ofMillis(
+                    intOption(options, "aimd-target-ms", (int) Math.ceil(2000 / tokensPerSecond))));
+            case "gradient" -> ConcurrencyLimiter.gradient(concurrency, maxConcurrency);
+            default -> throw new IllegalArgumentException("Unknown limiter: " + limiterName);
+        };
+
+        try (FakeOllamaServer server = new FakeOllamaServer.Builder()
+                .slots(slots)
+                .tokensPerSecond(tokensPerSecond)
+                .promptLatency(LatencyDistribution.parse(options.getOrDefault("latency", "lognormal:150:600")))
+                .errorRate(Double.parseDouble(options.getOrDefault("error-rate", "0")))
+                .seed(Long.parseLong(options.getOrDefault("seed", "42")))
+                .start()) {
+            OllamaApiClient client = new OllamaApiClient.Builder().baseUrl(server.baseUrl()).build();
+            LocalOllamaWorker worker = new LocalOllamaWorker(client, limiter, AdmissionPolicy.unbounded(),
+                    LocalOllamaWorker.DEFAULT_MAX_SESSION_CONTEXT_TOKENS);
+            RecordingWorker recorder = new RecordingWorker(worker);
+            try {
+                run(options, agentCount, iterations, recorder, worker, server,
+                        String.format("%s limiter at %d, server with %d slots at %.0f tokens/s",
+                                limiterName, concurrency, slots, tokensPerSecond));
+            } finally {
+                recorder.shutdown();
+            }
+        }
+    }
+
+    private static void run(Map<String, String> options, int agentCount, int iterations, RecordingWorker recorder,
+                            LocalOllamaWorker worker, FakeOllamaServer server, String setup) {
+        List<Agent> agents = new ArrayList<>(agentCount);
+        for (int i = 0; i < agentCount; i++) {
+            agents.add(Agent.create("Agent" + i,
+                    "Chronicle the life of catfish community number " + i + " along the mississippi river", recorder));
+        }
+        AgentOrchestrator orchestrator = new AgentOrchestrator.Builder()
+                .agents(agents)
+                .iterations(iterations)
+                .maxConcurrentCalls(intOption(options, "orchestrator-calls", 64))
+                .build();
+
+        System.out.printf("Running %d agents x %d iterations, %s%n", agentCount, iterations, setup);
+        AgentOrchestrator.Stats stats = orchestrator.run();
+
+        double seconds = stats.elapsed().toNanos() / 1e9;
+        SchedulerMetrics queue = worker.schedulerMetrics();
+        ConcurrencyLimiter.Stats limits = worker.limiterStats();
+        FakeOllamaServer.Stats serverStats = server.stats();
+        System.out.printf("Tasks:        %d completed, %d failed in %.1f s (%.2f tasks/s)%n",
+                stats.tasksCompleted(), stats.tasksFailed(), seconds, stats.tasksCompleted() / seconds);
+        int calls = recorder.latencies.count() + recorder.failureLatencies.count();
+        System.out.printf("Model calls:  %d (%.1f/s), %d failed, %d tokens (%.0f tokens/s)%n",
+                calls, calls / seconds, recorder.failureLatencies.count(),
+                recorder.tokens.sum(), recorder.tokens.sum() / seconds);
+        System.out.printf("Latency:      p50 %d ms, p99 %d ms, max %d ms%n",
+                recorder.latencies.percentile(50).toMillis(), recorder.latencies.percentile(99).toMillis(),
+                recorder.latencies.max().toMillis());
+        System.out.printf("Failed calls: p50 %d ms, p99 %d ms, max %d ms%n",
+                recorder.failureLatencies.percentile(50).toMillis(), recorder.failureLatencies.percentile(99).toMillis(),
+                recorder.failureLatencies.max().toMillis());
+        System.out.printf("Worker queue: average wait %d ms, max %d ms%n",
+                queue.averageWait().toMillis(), queue.maxWait().toMillis());
+        System.out.printf("Server queue: p50 wait %d ms, p99 %d ms%n",
+                serverStats.p50SlotWait().toMillis(), serverStats.p99SlotWait().toMillis());
+        System.out.printf("Limiter:      final limit %d, %d successes, %d drops%n",
+                limits.limit(), limits.successes(), limits.drops());
+        System.out.printf("Decoding:     %s%n", Agent.decodingStats());
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Expected --option=value but got: " + arg);
+            }
+            int equals = arg.indexOf('=');
+            if (equals < 0) {
+                options.put(arg.substring(2), "true");
+            } else {
+                options.put(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        }
+        return options;
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * Records the latency and token count of every call the agents make. Failed calls are timed separately so
+     * that fast rejections neither vanish from the report nor pull down the latency of successful calls.
+     */
+    private static class RecordingWorker extends AbstractAIWorker {
+
+        private final AIWorker delegate;
+        private final LatencyRecorder latencies = new LatencyRecorder();
+        private final LatencyRecorder failureLatencies = new LatencyRecorder();
+        private final LongAdder tokens = new LongAdder();
+
+        RecordingWorker(AIWorker delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public CompletableFuture<AIResponse> submitAsync(AIRequest request) {
+            return record(System.nanoTime(), delegate.submitAsync(request));
+        }
+
+        @Override
+        public CompletableFuture<AIResponse> submitStreaming(AIRequest request, Consumer<String> tokenListener) {
+            return record(System.nanoTime(), delegate.submitStreaming(request, tokenListener));
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        private CompletableFuture<AIResponse> record(long start, CompletableFuture<AIResponse> response) {
+            return response.whenComplete((result, error) -> {
+                if (error != null) {
+                    failureLatencies.record(System.nanoTime() - start);
+                    return;
+                }
+                latencies.record(System.nanoTime() - start);
+                tokens.add(result.tokens());
+            });
+        }
+    }
+}
@@ -1,12 +1,15 @@
 package aiforge;
 
+import aiforge.agents.AgentOrchestrator;
 import aiforge.ai.AIWorker;
 import aiforge.agents.Agent;
 import aiforge.agents.Context;
 import aiforge.ai.LocalOllamaWorker;
+import aiforge.ai.ResilientAIWorker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 
@@ -17,15 +20,28 @@ public class Application {
     public static void main(String[] args) {
 
         LOGGER.atInfo().log("Starting Llama AI worker...");
-        AIWorker worker = new LocalOllamaWorker();
-
-        LOGGER.atInfo().log("Creating agent...");
-        String purpose = "Develop a set of characters for a book about a community of talking catfish in the mississippi river";
-        Agent agent = Agent.create("WorldBuildingAgent", purpose, worker);
-        LOGGER.atInfo().log("Agent created");
+        AIWorker worker = new ResilientAIWorker.Builder(new LocalOllamaWorker(4))
+                .timeout(Duration.ofMinutes(2))
+                .build();
+
+        LOGGER.atInfo().log("Creating agents...");
+        List<Agent> agents = List.of(
+                Agent.create("WorldBuildingAgent",
+                        "Develop a set of characters for a book about a community of talking catfish in the mississippi river", worker),
+                Agent.create("PlotAgent",
+                        "Outline the main plot arcs for a book about a community of talking catfish in the mississippi river", worker),
+                Agent.create("SettingAgent",
+                        "Describe the places along the mississippi river where a community of talking catfish lives", worker));
+        LOGGER.atInfo().log("{} agents created", agents.size());
 
         LOGGER.atInfo().log("Running...");
-        agent.run();
+        AgentOrchestrator orchestrator = new AgentOrchestrator.Builder()
+                .agents(agents)
+                .iterations(5)
+                .maxConcurrentCalls(8)
+                .build();
+        AgentOrchestrator.Stats stats = orchestrator.run();
+        LOGGER.atInfo().log("Completed {} tasks ({} failed) in {}", stats.tasksCompleted(), stats.tasksFailed(), stats.elapsed());
 
         LOGGER.atInfo().log("Shutting down worker...");
         worker.shutdown();
@@ -1,36 +1,73 @@
 package aiforge.agents;
 
 import aiforge.ai.AIRequest;
+import aiforge.ai.AIResponse;
 import aiforge.ai.AIWorker;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import aiforge.ai.ResponseDecoder;
+import aiforge.ai.ResponseDecodingException;
+import aiforge.ai.StructuredFormat;
+import aiforge.utils.StreamingJsonArrayReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
-public record Agent(String name, String purpose, LongTermMemory longTermMemory, ShortTermMemory shortTermMemory, AIWorker worker) {
+public record Agent(String name, String purpose, LongTermMemory longTermMemory, ShortTermMemory shortTermMemory, AIWorker worker,
+                    AgentConfig config) {
 
-    private static final AIRequest.StructuredFormat CREATE_TASK_FORMAT = new AIRequest.StructuredFormat()
-            .addProperty("title", "string", true)
-            .addProperty("description", "string", true)
-            .addArrayProperty("detailedRequirements", "string", true);
-    private static final AIRequest.StructuredFormat PERFORM_TASK_FORMAT = new AIRequest.StructuredFormat()
-            .addArrayProperty("shortTermMemory", "string", true);
+    private static final StructuredFormat CREATE_TASK_FORMAT = StructuredFormat.builder()
+            .property("title", "string", true)
+            .property("description", "string", true)
+            .arrayProperty("detailedRequirements", "string", true)
+            .build();
+    private static final StructuredFormat PERFORM_TASK_FORMAT = StructuredFormat.builder()
+            .arrayProperty("shortTermMemory", "string", true)
+            .build();
+    private static final StructuredFormat SUMMARIZE_FORMAT = StructuredFormat.builder()
+            .property("summary", "string", true)
+            .build();
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Agent.class);
 
     private static final String GLOBAL_SYSTEM_PROMPT = loadGlobalSystemPrompt();
+    // Built once per purpose and status, so every request of an agent carries the same String instance, which
+    // lets the request serializer reuse its encoding
+    private static final Map<String, String> SYSTEM_PROMPTS = new ConcurrentHashMap<>();
     private static final String TASK_GENERATION_PROMPT = "Generate a task to help achieve your purpose.";
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(Agent.class);
+    private static final ResponseDecoder DECODER = new ResponseDecoder();
+
+    record TaskResult(List<String> shortTermMemory) {
+    }
+
+    record Summary(String summary) {
+    }
 
     public static Agent create(String name, String purpose, AIWorker worker) {
-        return new Agent(name, purpose, new LongTermMemory(), new ShortTermMemory(), worker);
+        return create(name, purpose, worker, new LongTermMemory());
+    }
+
+    public static Agent create(String name, String purpose, AIWorker worker, LongTermMemory longTermMemory) {
+        return create(name, purpose, worker, longTermMemory, AgentConfig.defaults());
+    }
+
+    public static Agent create(String name, String purpose, AIWorker worker, LongTermMemory longTermMemory, AgentConfig config) {
+        return new Agent(name, purpose, longTermMemory, new ShortTermMemory(), worker, config);
+    }
+
+    /**
+     * @return How often model responses to agents were invalid, repaired or asked for again
+     */
+    public static ResponseDecoder.Stats decodingStats() {
+        return DECODER.stats();
     }
 
     public void run() {
@@ -45,20 +82,35 @@ public record Agent(String name, String purpose, LongTermMemory longTermMemory,
     }
 
     public Task createTask() {
+        // Wait for the AI worker to complete the request and its response to be decoded
+        return await(createTaskAsync());
+    }
+
+    /**
+     * Start generating a task without waiting for it. Task generation does not read the agent's memories, so it
+     * can run while the results of the previous task are still being consolidated.
+     */
+    public CompletableFuture<Task> createTaskAsync() {
         LOGGER.atInfo().log("{}: Generating a new task...", name);
 
         // Create and submit the AIRequest
-        AIRequest aiRequest = AIRequest.of(getSystemPrompt(Status.GENERATING_TASK), TASK_GENERATION_PROMPT, CREATE_TASK_FORMAT);
-        String requestId = worker.submitRequest(aiRequest);
+        // Continue the agent's session so the backend can reuse the already evaluated system prompt
+        AIRequest aiRequest = AIRequest.of(getSystemPrompt(Status.GENERATING_TASK), TASK_GENERATION_PROMPT, CREATE_TASK_FORMAT)
+                .withSession(name);
+        CompletableFuture<Task> futureTask = DECODER.request(worker, aiRequest, Task.class);
         LOGGER.atInfo().log("{}: Create task request submitted to AI worker", name);
-
-        // Poll the AI worker for a response
-        String response = pollForResponse(requestId);
-
-        return Task.fromJson(response);
+        return futureTask;
     }
 
     public void performTask(Task task) {
+        executeTask(task);
+        consolidateMemories();
+    }
+
+    /**
+     * Have the model perform a task, storing the short-term memories it produces as they are generated.
+     */
+    public void executeTask(Task task) {
         LOGGER.atInfo().log("{}: Performing task...", name);
 
         // Combine memories into the task prompt
@@ -66,86 +118,125 @@ public record Agent(String name, String purpose, LongTermMemory longTermMemory,
         LOGGER.atInfo().log("{}: Task prompt enhanced with memories", name);
         LOGGER.atDebug().log("{}: Enhanced task prompt:\n{}", name, enhancedPrompt);
 
+        // Store each short-term memory as soon as the model has finished generating it
+        long rejectedBefore = shortTermMemory.duplicateStats().rejected();
+        StreamingJsonArrayReader memoryReader = new StreamingJsonArrayReader("shortTermMemory",
+                detail -> shortTermMemory.storeMemory(new Memory(detail)));
+
         // Create and submit the AIRequest
+        // Not part of the agent's session: the memories in the prompt would fill the context carried over
         AIRequest aiRequest = AIRequest.of(getSystemPrompt(Status.PERFORMING_TASK), enhancedPrompt, PERFORM_TASK_FORMAT);
-        String requestId = worker.submitRequest(aiRequest);
+        CompletableFuture<AIResponse> futureResponse = worker.submitStreaming(aiRequest, memoryReader);
         LOGGER.atInfo().log("{}: Complete task request submitted to AI worker", name);
 
-        // Poll the AI worker for a response
-        String response = pollForResponse(requestId);
-
-        // Parse and update memories
-        updateMemories(response);
+        // Wait for the AI worker to finish generating
+        AIResponse response = await(futureResponse);
+        int received = memoryReader.itemCount();
+        if (memoryReader.failed()) {
+            LOGGER.atWarn().log("{}: Failed to parse memories while streaming, repairing the response: {}", name,
+                    memoryReader.failure().getMessage());
+            received += storeRemainingMemories(aiRequest, response, received);
+        }
+        long duplicates = shortTermMemory.duplicateStats().rejected() - rejectedBefore;
+        LOGGER.atInfo().log("{}: Stored {} short-term memories, refused {} duplicates", name,
+                received - duplicates, duplicates);
     }
 
-    private String enhancePromptWithMemories(String taskPrompt) {
-        // Fetch short-term memory
-        String shortTermContext = shortTermMemory.getAllMemoriesAsString();
-
-        // Fetch relevant long-term memory (filtering logic can be customized)
-        List<Memory> relevantLongTermMemories = longTermMemory.getMemoriesByKey(name);
-        String longTermContext = relevantLongTermMemories.stream()
-                .map(Memory::getMemory)
-                .collect(Collectors.joining("\n"));
-
-        // Append memories to the task prompt
-        return String.format(
-                """
-                %s
-                
-                Context from Short-Term Memory:
-                %s
-                
-                Context from Long-Term Memory:
-                %s
-                """,
-                taskPrompt,
-                shortTermContext.isEmpty() ? "None" : shortTermContext,
-                longTermContext.isEmpty() ? "None" : longTermContext
-        );
-    }
-
-    private void updateMemories(String response) {
+    /**
+     * Decode a whole task response, repairing it if necessary, and store the memories that were not already
+     * stored while it was streamed.
+     *
+     * @return The number of memories found beyond those already stored
+     */
+    private int storeRemainingMemories(AIRequest aiRequest, AIResponse response, int alreadyStored) {
         try {
-            // Parse JSON response into long-term and short-term memory details
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode responseJson = objectMapper.readTree(response);
+            List<String> details = DECODER.decode(aiRequest, response, TaskResult.class).shortTermMemory();
+            List<String> remaining = details.subList(Math.min(alreadyStored, details.size()), details.size());
+            remaining.forEach(detail -> shortTermMemory.storeMemory(new Memory(detail)));
+            return remaining.size();
+        } catch (ResponseDecodingException e) {
+            LOGGER.error("{}: Failed to parse or update memories: {}", name, e.getMessage(), e);
+            return 0;
+        }
+    }
 
-            List<String> shortTermDetails = objectMapper.convertValue(
-                    responseJson.get("shortTermMemory"), new TypeReference<>() {});
+    /**
+     * Once short-term memory grows past the configured threshold, summarize its oldest entries with the model,
+     * promote the summary to long-term memory and drop the originals, so short-term memory stays bounded.
+     */
+    public void consolidateMemories() {
+        List<Memory> memories = shortTermMemory.getMemories();
+        if (memories.size() <= config.shortTermCompactionThreshold()) {
+            return;
+        }
+        List<Memory> oldest = memories.subList(0, Math.min(config.compactionBatchSize(), memories.size()));
+        LOGGER.atInfo().log("{}: Summarizing {} oldest short-term memories...", name, oldest.size());
 
-            // Store details in the respective memory stores
-            shortTermDetails.forEach(detail -> shortTermMemory.storeMemory(new Memory(detail)));
+        String prompt = "Summarize the following memories into one concise paragraph. Keep every concrete fact "
+                + "(names, numbers, decisions) and drop repetition.\n\n"
+                + oldest.stream().map(memory -> "- " + memory.getMemory()).collect(Collectors.joining("\n"));
+        AIRequest aiRequest = AIRequest.of(getSystemPrompt(Status.SUMMARIZING_MEMORY), prompt, SUMMARIZE_FORMAT);
+        try {
+            String summary = await(DECODER.request(worker, aiRequest, Summary.class)).summary();
+            if (summary.isBlank()) {
+                LOGGER.atWarn().log("{}: Summary was empty, keeping short-term memories", name);
+                return;
+            }
+            longTermMemory.storeMemory(name, new Memory(summary));
+            shortTermMemory.removeMemories(oldest);
         } catch (Exception e) {
-            LOGGER.error("{}: Failed to parse or update memories: {}", name, e.getMessage(), e);
+            LOGGER.error("{}: Failed to summarize short-term memories: {}", name, e.getMessage(), e);
         }
     }
 
-    private String pollForResponse(String requestId) {
-        Optional<String> response = Optional.empty();
-        while (response.isEmpty()) {
-            LOGGER.atInfo().log("{}: Polling AI worker for response...", name);
-            response = worker.getResponse(requestId);
-            if (response.isEmpty()) {
-                LOGGER.atInfo().log("{}: No response yet, waiting 2 seconds before polling again...", name);
-                try {
-                    Thread.sleep(2000);
-                } catch (InterruptedException e) {
-                    LOGGER.error("Task generation thread interrupted", e);
-                }
-            }
+    private String enhancePromptWithMemories(String taskPrompt) {
+        // Fetch short-term memory, oldest first
+        List<String> shortTermContext = shortTermMemory.getMemories().stream()
+                .map(Memory::getMemory)
+                .toList();
+
+        // Fetch long-term memory: the most relevant memories if they are indexed, otherwise all of them
+        List<Memory> relevantLongTermMemories = longTermMemory.isIndexed()
+                ? longTermMemory.getRelevantMemories(name, taskPrompt, config.longTermMemoryLimit())
+                : longTermMemory.getMemoriesByKey(name);
+        List<String> longTermContext = relevantLongTermMemories.stream()
+                .map(Memory::getMemory)
+                .toList();
+
+        // Append as much of each memory as fits in its token budget to the task prompt
+        return new PromptBuilder()
+                .text(taskPrompt)
+                .section("Context from Short-Term Memory:", shortTermContext, config.shortTermTokenBudget(), PromptBuilder.Keep.NEWEST)
+                .section("Context from Long-Term Memory:", longTermContext, config.longTermTokenBudget(),
+                        longTermMemory.isIndexed() ? PromptBuilder.Keep.FIRST : PromptBuilder.Keep.NEWEST)
+                .build();
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for AI worker response", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("AI worker failed to process request", e.getCause());
         }
-        return response.get();
     }
 
     private String getSystemPrompt(Status status) {
-        return GLOBAL_SYSTEM_PROMPT + "\n\n" + getAdditionalSystemPrompt(status, purpose);
+        return SYSTEM_PROMPTS.computeIfAbsent(status.name() + ':' + purpose,
+                key -> GLOBAL_SYSTEM_PROMPT + "\n\n" + getAdditionalSystemPrompt(status, purpose));
     }
 
     private static String loadGlobalSystemPrompt() {
         try {
-            Path path = Paths.get(Agent.class.getClassLoader().getResource("aiforge/agents/system.txt").toURI());
-            return Files.readString(path);
+            // Read as a stream rather than a path, which does not resolve when the resource is inside a jar
+            try (InputStream in = Agent.class.getClassLoader().getResourceAsStream("aiforge/agents/system.txt")) {
+                if (in == null) {
+                    throw new IOException("aiforge/agents/system.txt not found on the classpath");
+                }
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
         } catch (Exception e) {
             LOGGER.error("Error loading global system prompt from resources: {}", e.getMessage(), e);
             throw new RuntimeException("Failed to load global system prompt", e);
@@ -169,6 +260,10 @@ public record Agent(String name, String purpose, LongTermMemory longTermMemory,
                     Your responses should demonstrate that you have fully performed the task, with clear outputs or results.
                     Remember, you are PERFORMING the task, not analyzing or restating it.
                     \s""";
+            case SUMMARIZING_MEMORY -> """
+                    Condense your own memories without losing information. Write the summary as facts, not as
+                    a description of the memories.
+                    """;
             default -> "";
         };
         return additionalPrompt;
@@ -176,6 +271,7 @@ public record Agent(String name, String purpose, LongTermMemory longTermMemory,
 
     enum Status {
         GENERATING_TASK,
-        PERFORMING_TASK
+        PERFORMING_TASK,
+        SUMMARIZING_MEMORY
     }
 }
@@ -0,0 +1,18 @@
+package aiforge.agents;
+
+/**
+ * Tuning knobs for an {@link Agent}.
+ *
+ * @param shortTermTokenBudget         Maximum estimated tokens of short-term memory included in a prompt
+ * @param longTermTokenBudget          Maximum estimated tokens of long-term memory included in a prompt
+ * @param longTermMemoryLimit          Maximum number of memories retrieved from an indexed long-term memory
+ * @param shortTermCompactionThreshold Number of short-term memories above which the oldest are summarized
+ * @param compactionBatchSize          Number of short-term memories folded into each summary
+ */
+public record AgentConfig(int shortTermTokenBudget, int longTermTokenBudget, int longTermMemoryLimit,
+                          int shortTermCompactionThreshold, int compactionBatchSize) {
+
+    public static AgentConfig defaults() {
+        return new AgentConfig(1500, 1000, 10, 30, 10);
+    }
+}
@@ -0,0 +1,211 @@
+package aiforge.agents;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs many agents at once, each on its own virtual thread, over whatever workers they were created with.
+ * <p>
+ * Every model call an agent makes (generating a task, performing it, consolidating memories) first takes a
+ * permit from one fair semaphore. This caps the calls in flight across all agents, and because waiting agents
+ * are served in arrival order, a busy agent cannot starve the others. Each agent pipelines its iterations: the
+ * next task is requested as soon as the previous one has been performed, while its memories are still being
+ * consolidated.
+ * <p>
+ * {@link #shutdown()} lets every agent finish the iteration it is in and then stops it; {@link #shutdownNow()}
+ * interrupts them.
+ */
+public class AgentOrchestrator implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AgentOrchestrator.class);
+
+    /**
+     * @param tasksCompleted Tasks performed and consolidated, across all agents
+     * @param tasksFailed    Iterations that failed with an exception, across all agents
+     */
+    public record Stats(int agents, long tasksCompleted, long tasksFailed, Duration elapsed) {
+    }
+
+    private final List<Agent> agents;
+    private final int iterations;
+    private final Semaphore permits;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("agent-", 0).factory());
+    private final AtomicLong tasksCompleted = new AtomicLong();
+    private final AtomicLong tasksFailed = new AtomicLong();
+    private volatile boolean shuttingDown;
+    private CompletableFuture<Stats> completion;
+
+    private AgentOrchestrator(Builder builder) {
+        this.agents = List.copyOf(builder.agents);
+        this.iterations = builder.iterations;
+        this.permits = new Semaphore(builder.maxConcurrentCalls, true);
+    }
+
+    /**
+     * Start running every agent.
+     *
+     * @return A future completed once every agent has finished its iterations or stopped after a shutdown
+     */
+    public synchronized CompletableFuture<Stats> start() {
+        if (completion != null) {
+            throw new IllegalStateException("Orchestrator has already been started");
+        }
+        long start = System.nanoTime();
+        List<CompletableFuture<Void>> runs = new ArrayList<>(agents.size());
+        for (Agent agent : agents) {
+            runs.add(CompletableFuture.runAsync(() -> runAgent(agent), executor));
+        }
+        LOGGER.atInfo().log("Started {} agents for {} iterations each", agents.size(), iterations);
+        completion = CompletableFuture.allOf(runs.toArray(CompletableFuture[]::new))
+                .handle((ignored, failure) -> new Stats(agents.size(), tasksCompleted.get(), tasksFailed.get(),
+                        Duration.ofNanos(System.nanoTime() - start)));
+        executor.shutdown();
+        return completion;
+    }
+
+    /**
+     * Run every agent and wait for all of them to finish.
+     */
+    public Stats run() {
+        return start().join();
+    }
+
+    /**
+     * Let every agent finish its current iteration, then stop. Does not wait.
+     */
+    public void shutdown() {
+        shuttingDown = true;
+    }
+
+    /**
+     * Stop every agent immediately by interrupting it.
+     */
+    public void shutdownNow() {
+        shuttingDown = true;
+        executor.shutdownNow();
+    }
+
+    public boolean awaitTermination(Duration timeout) throws InterruptedException {
+        return executor.awaitTermination(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Shut down gracefully and wait for the agents to stop.
+     */
+    @Override
+    public void close() {
+        shutdown();
+        executor.close();
+    }
+
+    private void runAgent(Agent agent) {
+        CompletableFuture<Task> nextTask = null;
+        for (int i = 0; i < iterations && !shuttingDown; i++) {
+            try {
+                Task task = nextTask != null ? nextTask.join() : submitWithPermit(agent::createTaskAsync).join();
+                nextTask = null;
+                LOGGER.atInfo().log("{}: Task generated: {}", agent.name(), task.title());
+
+                callWithPermit(() -> agent.executeTask(task));
+                // Generate the next task while this one's memories are consolidated
+                if (i + 1 < iterations && !shuttingDown) {
+                    nextTask = submitWithPermit(agent::createTaskAsync);
+                }
+                callWithPermit(agent::consolidateMemories);
+                tasksCompleted.incrementAndGet();
+            } catch (Exception e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    LOGGER.atInfo().log("{}: Interrupted", agent.name());
+                    return;
+                }
+                tasksFailed.incrementAndGet();
+                nextTask = null;
+                LOGGER.atError().setCause(e).log("{}: Iteration {} failed", agent.name(), i + 1);
+            }
+        }
+        if (nextTask != null) {
+            nextTask.cancel(false);
+        }
+        LOGGER.atInfo().log("{}: Finished", agent.name());
+    }
+
+    private void callWithPermit(Runnable call) {
+        acquirePermit();
+        try {
+            call.run();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Take a permit for an asynchronous call and hold it until the call completes.
+     */
+    private <T> CompletableFuture<T> submitWithPermit(Supplier<CompletableFuture<T>> call) {
+        acquirePermit();
+        try {
+            return call.get().whenComplete((result, failure) -> permits.release());
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void acquirePermit() {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a permit", e);
+        }
+    }
+
+    public static class Builder {
+
+        private final List<Agent> agents = new ArrayList<>();
+        private int iterations = 5;
+        private int maxConcurrentCalls = 64;
+
+        public Builder agent(Agent agent) {
+            agents.add(agent);
+            return this;
+        }
+
+        public Builder agents(List<Agent> agents) {
+            this.agents.addAll(agents);
+            return this;
+        }
+
+        /**
+         * @param iterations How many tasks each agent generates and performs
+         */
+        public Builder iterations(int iterations) {
+            this.iterations = iterations;
+            return this;
+        }
+
+        /**
+         * @param maxConcurrentCalls Most model calls in flight across all agents
+         */
+        public Builder maxConcurrentCalls(int maxConcurrentCalls) {
+            this.maxConcurrentCalls = maxConcurrentCalls;
+            return this;
+        }
+
+        public AgentOrchestrator build() {
+            return new AgentOrchestrator(this);
+        }
+    }
+}
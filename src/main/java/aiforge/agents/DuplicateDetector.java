@@ -0,0 +1,327 @@
+package aiforge.agents;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Recognises texts that repeat one that was registered before, so a memory store can refuse them.
+ * <p>
+ * Three checks run in order of cost:
+ * <ol>
+ *   <li>Exact: the text is the same as a registered one after lower-casing and collapsing punctuation and
+ *   whitespace. One hash map lookup.</li>
+ *   <li>Near: the estimated Jaccard similarity between the sets of words and word pairs of the text and a
+ *   registered text is at least {@code nearDuplicateThreshold}. Each text gets a MinHash signature, and the
+ *   signatures are indexed in bands (locality-sensitive hashing), so only texts sharing a whole band with the
+ *   new one are compared however many are registered.</li>
+ *   <li>Similar (optional): the cosine similarity between the embeddings of the text and a registered text is
+ *   at least {@code similarityThreshold}. This catches paraphrases with different wording, but costs an
+ *   embedding call and a scan over the registered vectors, so it is best suited to small stores such as
+ *   short-term memory.</li>
+ * </ol>
+ * Texts that state different numbers are never near or similar duplicates of each other, however much of their
+ * wording they share: "the ticket costs 20 dollars" corrects "the ticket costs 10 dollars" rather than
+ * repeating it.
+ */
+public class DuplicateDetector {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DuplicateDetector.class);
+
+    private static final int BANDS = 16;
+    private static final int ROWS_PER_BAND = 4;
+    private static final int SIGNATURE_LENGTH = BANDS * ROWS_PER_BAND;
+    private static final long[] SEEDS = new long[SIGNATURE_LENGTH];
+
+    static {
+        long seed = 0x5DEECE66DL;
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            seed = mix(seed + 0x9E3779B97F4A7C15L);
+            SEEDS[i] = seed;
+        }
+    }
+
+    public enum Verdict {
+        UNIQUE,
+        EXACT_DUPLICATE,
+        NEAR_DUPLICATE,
+        SIMILAR_DUPLICATE
+    }
+
+    /**
+     * Duplicates are refused outright rather than merged into the text they repeat, since the registered text
+     * already says everything the duplicate does; so there are counters for rejections but none for merges.
+     */
+    public record Stats(long accepted, long exactDuplicates, long nearDuplicates, long similarDuplicates) {
+
+        public long rejected() {
+            return exactDuplicates + nearDuplicates + similarDuplicates;
+        }
+    }
+
+    /**
+     * @param numbers The numbers in the text, in order
+     */
+    private record Fingerprint(String normalized, long[] signature, List<String> numbers, float[] embedding) {
+    }
+
+    private final double nearDuplicateThreshold;
+    private final Embedder embedder;
+    private final double similarityThreshold;
+
+    private final Map<String, Fingerprint> byText = new HashMap<>();
+    private final Map<Long, List<Fingerprint>> byBand = new HashMap<>();
+    private long accepted;
+    private long exactDuplicates;
+    private long nearDuplicates;
+    private long similarDuplicates;
+
+    private DuplicateDetector(Builder builder) {
+        this.nearDuplicateThreshold = builder.nearDuplicateThreshold;
+        this.embedder = builder.embedder;
+        this.similarityThreshold = builder.similarityThreshold;
+    }
+
+    /**
+     * @return A detector with the exact and near-duplicate checks and no embedding check
+     */
+    public static DuplicateDetector create() {
+        return new Builder().build();
+    }
+
+    /**
+     * Check a text against every registered text and register it if it is unique.
+     */
+    public Verdict register(String text) {
+        String normalized = normalize(text);
+        long[] signature = signature(normalized);
+        List<String> numbers = numbers(normalized);
+        if (embedder == null) {
+            return register(normalized, signature, numbers, null);
+        }
+        // Rule out the cheap cases before paying for an embedding, which is computed without holding the lock
+        synchronized (this) {
+            Verdict verdict = checkHashes(normalized, signature, numbers);
+            if (verdict != Verdict.UNIQUE) {
+                return verdict;
+            }
+        }
+        return register(normalized, signature, numbers, embed(text));
+    }
+
+    /**
+     * Forget a registered text, e.g. after the memory holding it was removed, so it may be stored again.
+     */
+    public synchronized void unregister(String text) {
+        Fingerprint fingerprint = byText.remove(normalize(text));
+        if (fingerprint == null) {
+            return;
+        }
+        for (int band = 0; band < BANDS; band++) {
+            long key = bandKey(fingerprint.signature(), band);
+            List<Fingerprint> candidates = byBand.get(key);
+            candidates.remove(fingerprint);
+            if (candidates.isEmpty()) {
+                byBand.remove(key);
+            }
+        }
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(accepted, exactDuplicates, nearDuplicates, similarDuplicates);
+    }
+
+    private synchronized Verdict register(String normalized, long[] signature, List<String> numbers, float[] embedding) {
+        Verdict verdict = checkHashes(normalized, signature, numbers);
+        if (verdict != Verdict.UNIQUE) {
+            return verdict;
+        }
+        if (embedding != null && hasSimilarDuplicate(embedding, numbers)) {
+            similarDuplicates++;
+            return Verdict.SIMILAR_DUPLICATE;
+        }
+
+        Fingerprint fingerprint = new Fingerprint(normalized, signature, numbers, embedding);
+        byText.put(normalized, fingerprint);
+        for (int band = 0; band < BANDS; band++) {
+            byBand.computeIfAbsent(bandKey(signature, band), k -> new ArrayList<>()).add(fingerprint);
+        }
+        accepted++;
+        return Verdict.UNIQUE;
+    }
+
+    private Verdict checkHashes(String normalized, long[] signature, List<String> numbers) {
+        if (byText.containsKey(normalized)) {
+            exactDuplicates++;
+            return Verdict.EXACT_DUPLICATE;
+        }
+        if (hasNearDuplicate(signature, numbers)) {
+            nearDuplicates++;
+            return Verdict.NEAR_DUPLICATE;
+        }
+        return Verdict.UNIQUE;
+    }
+
+    private boolean hasNearDuplicate(long[] signature, List<String> numbers) {
+        for (int band = 0; band < BANDS; band++) {
+            for (Fingerprint candidate : byBand.getOrDefault(bandKey(signature, band), List.of())) {
+                if (candidate.numbers().equals(numbers)
+                        && estimateJaccard(signature, candidate.signature()) >= nearDuplicateThreshold) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean hasSimilarDuplicate(float[] embedding, List<String> numbers) {
+        for (Fingerprint fingerprint : byText.values()) {
+            if (fingerprint.embedding() != null && fingerprint.numbers().equals(numbers)
+                    && cosine(embedding, fingerprint.embedding()) >= similarityThreshold) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private float[] embed(String text) {
+        if (embedder == null) {
+            return null;
+        }
+        try {
+            return embedder.embed(text);
+        } catch (Embedder.EmbeddingException e) {
+            LOGGER.atWarn().setCause(e).log("Skipping the similarity check for a memory that could not be embedded");
+            return null;
+        }
+    }
+
+    private static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT).replaceAll("[^\\p{L}\\p{N}]+", " ").strip();
+    }
+
+    private static List<String> numbers(String normalized) {
+        List<String> numbers = new ArrayList<>();
+        for (String word : normalized.split(" ")) {
+            if (!word.isEmpty() && word.chars().anyMatch(Character::isDigit)) {
+                numbers.add(word);
+            }
+        }
+        return numbers;
+    }
+
+    /**
+     * MinHash signature over the words and adjacent word pairs of a normalized text.
+     */
+    private static long[] signature(String normalized) {
+        Set<String> features = new HashSet<>();
+        String[] words = normalized.split(" ");
+        for (int i = 0; i < words.length; i++) {
+            features.add(words[i]);
+            if (i > 0) {
+                features.add(words[i - 1] + ' ' + words[i]);
+            }
+        }
+        long[] signature = new long[SIGNATURE_LENGTH];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (String feature : features) {
+            long featureHash = hash(feature);
+            for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+                signature[i] = Math.min(signature[i], mix(featureHash ^ SEEDS[i]));
+            }
+        }
+        return signature;
+    }
+
+    private static double estimateJaccard(long[] a, long[] b) {
+        int equal = 0;
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / SIGNATURE_LENGTH;
+    }
+
+    private static long bandKey(long[] signature, int band) {
+        long key = band;
+        for (int row = band * ROWS_PER_BAND; row < (band + 1) * ROWS_PER_BAND; row++) {
+            key = mix(key ^ signature[row]);
+        }
+        return key;
+    }
+
+    /**
+     * 64-bit FNV-1a.
+     */
+    private static long hash(String feature) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < feature.length(); i++) {
+            hash ^= feature.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * The SplitMix64 finalizer, used to derive independent hash functions from one feature hash.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return 0;
+        }
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0 || normB == 0 ? 0 : dot / Math.sqrt(normA * normB);
+    }
+
+    public static class Builder {
+
+        // Sentences of ten words or so that differ in a single word already score around 0.7
+        private double nearDuplicateThreshold = 0.9;
+        private Embedder embedder;
+        private double similarityThreshold = 0.92;
+
+        /**
+         * @param nearDuplicateThreshold Texts whose word sets have at least this Jaccard similarity count as near
+         *                               duplicates
+         */
+        public Builder nearDuplicateThreshold(double nearDuplicateThreshold) {
+            this.nearDuplicateThreshold = nearDuplicateThreshold;
+            return this;
+        }
+
+        /**
+         * Also reject texts whose embedding is at least this similar to a registered text's.
+         */
+        public Builder similarity(Embedder embedder, double similarityThreshold) {
+            this.embedder = embedder;
+            this.similarityThreshold = similarityThreshold;
+            return this;
+        }
+
+        public DuplicateDetector build() {
+            return new DuplicateDetector(this);
+        }
+    }
+}
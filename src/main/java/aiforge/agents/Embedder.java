@@ -0,0 +1,19 @@
+package aiforge.agents;
+
+/**
+ * Turns text into a vector such that texts with similar meaning have vectors pointing in similar directions.
+ */
+@FunctionalInterface
+public interface Embedder {
+
+    /**
+     * @throws EmbeddingException If the embedding could not be computed
+     */
+    float[] embed(String text);
+
+    class EmbeddingException extends RuntimeException {
+        public EmbeddingException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
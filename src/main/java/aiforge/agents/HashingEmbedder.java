@@ -0,0 +1,46 @@
+package aiforge.agents;
+
+import java.util.Locale;
+
+/**
+ * Deterministic, dependency-free embedder that hashes words and word pairs into a fixed number of buckets.
+ * It only captures lexical overlap, not meaning, but needs no model server, which makes it suitable for
+ * tests and offline runs.
+ */
+public class HashingEmbedder implements Embedder {
+
+    private final int dimensions;
+
+    public HashingEmbedder() {
+        this(256);
+    }
+
+    public HashingEmbedder(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] vector = new float[dimensions];
+        String[] words = text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+");
+        String previous = null;
+        for (String word : words) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            add(vector, word.hashCode(), 1.0f);
+            if (previous != null) {
+                add(vector, (previous + ' ' + word).hashCode(), 0.5f);
+            }
+            previous = word;
+        }
+        return vector;
+    }
+
+    private void add(float[] vector, int hash, float weight) {
+        // Spread hashes over the buckets and use one hash bit as a sign to reduce collision bias
+        int mixed = hash * 0x9E3779B9;
+        int bucket = Math.floorMod(mixed, dimensions);
+        vector[bucket] += (mixed >>> 31) == 0 ? weight : -weight;
+    }
+}
@@ -0,0 +1,351 @@
+package aiforge.agents;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.function.BiConsumer;
+
+/**
+ * Approximate nearest-neighbour index using a Hierarchical Navigable Small World graph
+ * (Malkov and Yashunin, 2016). Similarity is the cosine of the angle between vectors; vectors are
+ * normalized when added so that it reduces to a dot product.
+ * <p>
+ * Insertion and search cost grow logarithmically with the number of items. Removed items stay in the graph as
+ * tombstones, so that searches can still pass through them, but are never returned; rebuild the index once they
+ * make up a large part of it. The index is safe for use by multiple threads, but serializes all operations.
+ *
+ * @param <T> The item stored with each vector
+ */
+class HnswIndex<T> {
+
+    private static final Comparator<Candidate> CLOSEST_FIRST = Comparator.comparingDouble(Candidate::distance);
+    private static final Comparator<Candidate> FURTHEST_FIRST = CLOSEST_FIRST.reversed();
+
+    private final int maxConnections;
+    private final int maxConnectionsLayerZero;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double levelMultiplier;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    private final List<float[]> vectors = new ArrayList<>();
+    private final List<T> items = new ArrayList<>();
+    // neighbours.get(node)[layer] holds the node's neighbour IDs on that layer; counts are kept alongside
+    private final List<int[][]> neighbours = new ArrayList<>();
+    private final List<int[]> neighbourCounts = new ArrayList<>();
+    private final Map<T, Integer> nodes = new IdentityHashMap<>();
+    private final BitSet removed = new BitSet();
+
+    private int dimensions = -1;
+    private int entryPoint = -1;
+    private int topLayer = -1;
+    private int[] visitedMarks = new int[16];
+    private int visitGeneration;
+
+    HnswIndex() {
+        this(16, 100, 50);
+    }
+
+    /**
+     * @param maxConnections Neighbours kept per node on the upper layers (twice that on the bottom layer)
+     * @param efConstruction Size of the candidate list while inserting; higher builds a better graph, slower
+     * @param efSearch       Minimum size of the candidate list while searching; higher is more accurate, slower
+     */
+    HnswIndex(int maxConnections, int efConstruction, int efSearch) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsLayerZero = 2 * maxConnections;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1 / Math.log(maxConnections);
+    }
+
+    /**
+     * @return The number of items in the index, not counting removed ones
+     */
+    synchronized int size() {
+        return items.size() - removed.cardinality();
+    }
+
+    /**
+     * @return The number of removed items still kept in the graph
+     */
+    synchronized int removedCount() {
+        return removed.cardinality();
+    }
+
+    /**
+     * Visit every item that has not been removed together with its (normalized) vector, in insertion order.
+     */
+    synchronized void forEach(BiConsumer<float[], T> action) {
+        for (int i = 0; i < items.size(); i++) {
+            if (!removed.get(i)) {
+                action.accept(vectors.get(i), items.get(i));
+            }
+        }
+    }
+
+    /**
+     * Stop returning an item (compared by identity) from searches.
+     *
+     * @return True if the item was in the index
+     */
+    synchronized boolean remove(T item) {
+        Integer node = nodes.remove(item);
+        if (node == null) {
+            return false;
+        }
+        removed.set(node);
+        return true;
+    }
+
+    synchronized void add(float[] vector, T item) {
+        if (dimensions == -1) {
+            dimensions = vector.length;
+        } else if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected a vector of " + dimensions + " dimensions but got " + vector.length);
+        }
+        float[] normalized = normalize(vector);
+        int level = randomLevel();
+        int node = items.size();
+        vectors.add(normalized);
+        items.add(item);
+        nodes.put(item, node);
+        int[][] layers = new int[level + 1][];
+        for (int layer = 0; layer <= level; layer++) {
+            layers[layer] = new int[maxConnections(layer) + 1];
+        }
+        neighbours.add(layers);
+        neighbourCounts.add(new int[level + 1]);
+
+        if (entryPoint == -1) {
+            entryPoint = node;
+            topLayer = level;
+            return;
+        }
+
+        int current = entryPoint;
+        for (int layer = topLayer; layer > level; layer--) {
+            current = greedyClosest(normalized, current, layer);
+        }
+        List<Candidate> entryPoints = List.of(new Candidate(current, distance(normalized, vectors.get(current))));
+        for (int layer = Math.min(level, topLayer); layer >= 0; layer--) {
+            List<Candidate> found = searchLayer(normalized, entryPoints, efConstruction, layer, false);
+            for (Candidate neighbour : selectNeighbours(found, maxConnections)) {
+                connect(node, neighbour.node(), layer);
+                connect(neighbour.node(), node, layer);
+            }
+            entryPoints = found;
+        }
+        if (level > topLayer) {
+            topLayer = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * @return Up to {@code k} items whose vectors are most similar to the query, most similar first, leaving out
+     * removed items
+     */
+    synchronized List<T> search(float[] query, int k) {
+        if (entryPoint == -1 || k <= 0) {
+            return List.of();
+        }
+        float[] normalized = normalize(query);
+        int current = entryPoint;
+        for (int layer = topLayer; layer > 0; layer--) {
+            current = greedyClosest(normalized, current, layer);
+        }
+        List<Candidate> found = searchLayer(normalized,
+                List.of(new Candidate(current, distance(normalized, vectors.get(current)))), Math.max(efSearch, k), 0, true);
+        return found.subList(0, Math.min(k, found.size())).stream().map(candidate -> items.get(candidate.node())).toList();
+    }
+
+    private int greedyClosest(float[] query, int start, int layer) {
+        int current = start;
+        double currentDistance = distance(query, vectors.get(current));
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] layerNeighbours = neighbours.get(current)[layer];
+            int count = neighbourCounts.get(current)[layer];
+            for (int i = 0; i < count; i++) {
+                double neighbourDistance = distance(query, vectors.get(layerNeighbours[i]));
+                if (neighbourDistance < currentDistance) {
+                    current = layerNeighbours[i];
+                    currentDistance = neighbourDistance;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @param skipRemoved Leave removed nodes out of the results; they are still explored to reach the nodes beyond
+     * @return The {@code ef} closest nodes to the query found on the layer, closest first
+     */
+    private List<Candidate> searchLayer(float[] query, List<Candidate> entryPoints, int ef, int layer, boolean skipRemoved) {
+        startVisit();
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(CLOSEST_FIRST);
+        PriorityQueue<Candidate> results = new PriorityQueue<>(FURTHEST_FIRST);
+        for (Candidate entry : entryPoints) {
+            markVisited(entry.node());
+            candidates.add(entry);
+            if (!skipRemoved || !removed.get(entry.node())) {
+                results.add(entry);
+            }
+        }
+        while (results.size() > ef) {
+            results.poll();
+        }
+
+        while (!candidates.isEmpty()) {
+            Candidate closest = candidates.poll();
+            if (results.size() >= ef && closest.distance() > results.peek().distance()) {
+                break;
+            }
+            int[] layerNeighbours = neighbours.get(closest.node())[layer];
+            int count = neighbourCounts.get(closest.node())[layer];
+            for (int i = 0; i < count; i++) {
+                int neighbour = layerNeighbours[i];
+                if (!markVisited(neighbour)) {
+                    continue;
+                }
+                double neighbourDistance = distance(query, vectors.get(neighbour));
+                if (results.size() < ef || neighbourDistance < results.peek().distance()) {
+                    Candidate candidate = new Candidate(neighbour, neighbourDistance);
+                    candidates.add(candidate);
+                    if (skipRemoved && removed.get(neighbour)) {
+                        continue;
+                    }
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(CLOSEST_FIRST);
+        return sorted;
+    }
+
+    /**
+     * Choose up to {@code limit} neighbours from candidates sorted closest first. A candidate is skipped if it
+     * is closer to an already chosen neighbour than to the base node, which keeps links spread out in different
+     * directions instead of clustered (the heuristic of the HNSW paper); skipped candidates fill any remaining
+     * slots.
+     */
+    private List<Candidate> selectNeighbours(List<Candidate> candidates, int limit) {
+        if (candidates.size() <= limit) {
+            return candidates;
+        }
+        List<Candidate> selected = new ArrayList<>(limit);
+        List<Candidate> skipped = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (selected.size() == limit) {
+                break;
+            }
+            float[] vector = vectors.get(candidate.node());
+            boolean diverse = true;
+            for (Candidate chosen : selected) {
+                if (distance(vector, vectors.get(chosen.node())) < candidate.distance()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            (diverse ? selected : skipped).add(candidate);
+        }
+        for (int i = 0; selected.size() < limit && i < skipped.size(); i++) {
+            selected.add(skipped.get(i));
+        }
+        return selected;
+    }
+
+    /**
+     * Add {@code to} to the neighbours of {@code from}, re-selecting them if that exceeds the limit.
+     */
+    private void connect(int from, int to, int layer) {
+        int[] layerNeighbours = neighbours.get(from)[layer];
+        int[] counts = neighbourCounts.get(from);
+        layerNeighbours[counts[layer]++] = to;
+        int limit = maxConnections(layer);
+        if (counts[layer] <= limit) {
+            return;
+        }
+        float[] origin = vectors.get(from);
+        List<Candidate> candidates = new ArrayList<>(counts[layer]);
+        for (int i = 0; i < counts[layer]; i++) {
+            candidates.add(new Candidate(layerNeighbours[i], distance(origin, vectors.get(layerNeighbours[i]))));
+        }
+        candidates.sort(CLOSEST_FIRST);
+        List<Candidate> selected = selectNeighbours(candidates, limit);
+        for (int i = 0; i < selected.size(); i++) {
+            layerNeighbours[i] = selected.get(i).node();
+        }
+        counts[layer] = selected.size();
+    }
+
+    private int maxConnections(int layer) {
+        return layer == 0 ? maxConnectionsLayerZero : maxConnections;
+    }
+
+    private int randomLevel() {
+        return (int) Math.floor(-Math.log(1 - random.nextDouble()) * levelMultiplier);
+    }
+
+    private void startVisit() {
+        if (visitedMarks.length < items.size()) {
+            visitedMarks = Arrays.copyOf(visitedMarks, Math.max(items.size(), visitedMarks.length * 2));
+        }
+        if (++visitGeneration == Integer.MAX_VALUE) {
+            Arrays.fill(visitedMarks, 0);
+            visitGeneration = 1;
+        }
+    }
+
+    /**
+     * @return True if the node had not been visited yet in the current search
+     */
+    private boolean markVisited(int node) {
+        if (visitedMarks[node] == visitGeneration) {
+            return false;
+        }
+        visitedMarks[node] = visitGeneration;
+        return true;
+    }
+
+    private static double distance(float[] a, float[] b) {
+        double dot = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return 1 - dot;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            return vector.clone();
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] * scale;
+        }
+        return normalized;
+    }
+
+    private record Candidate(int node, double distance) {
+    }
+}
@@ -1,8 +1,180 @@
 package aiforge.agents;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Long-term memory store. When created with an {@link Embedder}, every memory is also indexed by its
+ * embedding so that {@link #getRelevantMemories(String, String, int)} can return just the memories most
+ * related to a query, keeping prompts a fixed size however much the agent remembers.
+ * <p>
+ * Removed memories are marked as tombstones in the index, which searches skip. Once a key's index holds more
+ * tombstones than live memories it is rebuilt without them.
+ */
 public class LongTermMemory extends MemoryStore {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(LongTermMemory.class);
+
+    private final Embedder embedder;
+    private final Map<String, HnswIndex<Memory>> indexes = new ConcurrentHashMap<>();
+
+    public LongTermMemory() {
+        this(null);
+    }
+
+    public LongTermMemory(Embedder embedder) {
+        this(embedder, null);
+    }
+
+    private LongTermMemory(Embedder embedder, MemoryJournal journal) {
+        super(journal);
+        this.embedder = embedder;
+    }
+
+    /**
+     * Open a long-term memory that is persisted to a journal in the given directory, restoring whatever it
+     * held when it was last closed. Embeddings are persisted with the memories, so the index is rebuilt
+     * without calling the embedder again.
+     */
+    public static LongTermMemory open(Path directory, Embedder embedder) throws IOException {
+        LongTermMemory memory = new LongTermMemory(embedder, MemoryJournal.open(directory));
+        memory.recover();
+        // Replayed removals only took the memories out of the store
+        memory.indexes.keySet().forEach(memory::removeUnstoredFromIndex);
+        return memory;
+    }
+
+    @Override
     public void storeMemory(String agentName, Memory memory) {
-        super.storeMemory(agentName, memory);
+        if (embedder == null || agentName == null || agentName.isBlank() || memory == null || memory.getMemory().isBlank()) {
+            super.storeMemory(agentName, memory);
+            return;
+        }
+        float[] embedding = embed(agentName, memory);
+        // Indexed first, so that whoever sees the memory in the store and removes it also finds it in the index
+        if (embedding != null) {
+            index(agentName, embedding, memory);
+        }
+        super.storeMemory(agentName, memory, embedding);
+    }
+
+    @Override
+    public void removeMemories(String key, Collection<Memory> toRemove) {
+        super.removeMemories(key, toRemove);
+        indexes.computeIfPresent(key, (k, index) -> {
+            toRemove.forEach(index::remove);
+            return compact(key, index);
+        });
+    }
+
+    @Override
+    protected void restoreMemory(String key, Memory memory, float[] embedding) {
+        super.restoreMemory(key, memory, embedding);
+        if (embedder == null) {
+            return;
+        }
+        float[] vector = embedding != null ? embedding : embed(key, memory);
+        if (vector != null) {
+            index(key, vector, memory);
+        }
+    }
+
+    private void index(String key, float[] embedding, Memory memory) {
+        // Added while computing so that it cannot be lost to a concurrent rebuild
+        indexes.compute(key, (k, index) -> {
+            HnswIndex<Memory> target = index != null ? index : new HnswIndex<>();
+            target.add(embedding, memory);
+            return target;
+        });
+    }
+
+    /**
+     * Tombstone the indexed memories of a key that are no longer in the store.
+     */
+    private void removeUnstoredFromIndex(String key) {
+        Set<Memory> stored = Collections.newSetFromMap(new IdentityHashMap<>());
+        stored.addAll(getMemoriesByKey(key));
+        indexes.computeIfPresent(key, (k, index) -> {
+            List<Memory> unstored = new ArrayList<>();
+            index.forEach((vector, memory) -> {
+                if (!stored.contains(memory)) {
+                    unstored.add(memory);
+                }
+            });
+            unstored.forEach(index::remove);
+            return compact(key, index);
+        });
+    }
+
+    /**
+     * @return The index rebuilt without its tombstones if they outnumber its live memories, else the index itself
+     */
+    private static HnswIndex<Memory> compact(String key, HnswIndex<Memory> index) {
+        if (index.removedCount() <= index.size()) {
+            return index;
+        }
+        HnswIndex<Memory> rebuilt = new HnswIndex<>();
+        index.forEach(rebuilt::add);
+        LOGGER.atDebug().log("Rebuilt index of {} without {} removed memories", key, index.removedCount());
+        return rebuilt;
+    }
+
+    @Override
+    protected List<MemoryJournal.Entry> snapshot() {
+        List<MemoryJournal.Entry> entries = new ArrayList<>();
+        getAllMemories().forEach((key, memoryList) -> {
+            Map<Memory, float[]> embeddings = new IdentityHashMap<>();
+            HnswIndex<Memory> index = indexes.get(key);
+            if (index != null) {
+                index.forEach((vector, memory) -> embeddings.put(memory, vector));
+            }
+            for (Memory memory : memoryList) {
+                entries.add(MemoryJournal.Entry.store(key, memory.getMemory(), embeddings.get(memory)));
+            }
+        });
+        return entries;
+    }
+
+    private float[] embed(String key, Memory memory) {
+        try {
+            return embedder.embed(memory.getMemory());
+        } catch (Embedder.EmbeddingException e) {
+            LOGGER.atWarn().setCause(e).log("Storing memory under {} without an embedding", key);
+            return null;
+        }
+    }
+
+    /**
+     * Get the memories under a key that are most relevant to a query. Without an embedder, or if the query
+     * cannot be embedded, this falls back to the {@code limit} most recent memories.
+     *
+     * @param limit Maximum number of memories to return
+     */
+    public List<Memory> getRelevantMemories(String key, String query, int limit) {
+        HnswIndex<Memory> index = indexes.get(key);
+        if (index != null) {
+            try {
+                return index.search(embedder.embed(query), limit);
+            } catch (Embedder.EmbeddingException e) {
+                LOGGER.atWarn().setCause(e).log("Falling back to recent memories for {}", key);
+            }
+        }
+        List<Memory> memories = getMemoriesByKey(key);
+        return memories.subList(Math.max(0, memories.size() - limit), memories.size());
+    }
+
+    public boolean isIndexed() {
+        return embedder != null;
     }
 }
@@ -1,11 +1,14 @@
 package aiforge.agents;
 
-public class Memory {
+/**
+ * A single remembered fact. Memories are immutable so they can be shared freely between agents and threads.
+ */
+public final class Memory {
 
-    private String memory;
+    private final String memory;
 
     public Memory() {
-        this.memory = ""; // Start with an empty memory
+        this(""); // Start with an empty memory
     }
 
     public Memory(String initialMemory) {
@@ -16,14 +19,16 @@ public class Memory {
         return memory;
     }
 
-    public void append(String newMemory) {
+    /**
+     * @return A new memory with the given text added on a new line, or this memory if the text is empty
+     */
+    public Memory append(String newMemory) {
         if (newMemory == null || newMemory.isBlank()) {
-            return; // Ignore empty or null updates
+            return this; // Ignore empty or null updates
         }
         if (memory.isBlank()) {
-            memory = newMemory.trim();
-        } else {
-            memory += "\n" + newMemory.trim();
+            return new Memory(newMemory.trim());
         }
+        return new Memory(memory + "\n" + newMemory.trim());
     }
 }
@@ -0,0 +1,465 @@
+package aiforge.agents;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, append-only log of changes to a {@link MemoryStore}.
+ * <p>
+ * Every change is written as a length-prefixed, CRC-checked binary record through a {@link FileChannel}.
+ * Records are committed in groups: a background thread collects whatever was appended during the last
+ * {@code commitInterval}, writes it in one go and issues a single fsync for the whole group. Once the log
+ * grows past {@code compactionThresholdBytes} the store's current contents are written to a snapshot file
+ * and the log is truncated, so recovery never replays more than one snapshot plus a short log.
+ * Recovery memory-maps both files and decodes them directly, without copying them onto the heap first.
+ * <p>
+ * Layout of the directory:
+ * <pre>
+ *   snapshot.bin   header, then one STORE record per memory at the time of the last compaction
+ *   journal.log    header, then every change since that snapshot
+ *   header         int magic, long generation
+ *   record         int bodyLength, body, int crc32(body)
+ *   body           byte operation, int keyLength, key (UTF-8), int memoryLength, memory (UTF-8),
+ *                  int embeddingLength, embedding (floats)
+ * </pre>
+ * The log is only replayed if its generation matches the snapshot's, which makes a crash between writing a
+ * snapshot and truncating the log harmless.
+ */
+public class MemoryJournal implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MemoryJournal.class);
+
+    private static final int MAGIC = 0x4D454D4A; // "MEMJ"
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES;
+    private static final String LOG_FILE = "journal.log";
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+
+    public enum Operation {
+        STORE,
+        REMOVE
+    }
+
+    /**
+     * @param embedding The memory's embedding, or null if it has none
+     */
+    public record Entry(Operation operation, String key, String memory, float[] embedding) {
+
+        public static Entry store(String key, String memory, float[] embedding) {
+            return new Entry(Operation.STORE, key, memory, embedding);
+        }
+
+        public static Entry remove(String key, String memory) {
+            return new Entry(Operation.REMOVE, key, memory, null);
+        }
+    }
+
+    private final Path directory;
+    private final long commitIntervalNanos;
+    private final long compactionThresholdBytes;
+    private final FileChannel log;
+    private final Thread committer;
+    // Appends hold the read lock so they run concurrently; compaction holds the write lock so that the snapshot
+    // it takes matches exactly the records it discards
+    private final ReentrantReadWriteLock compactionLock = new ReentrantReadWriteLock();
+    // Held while records are taken from the pending lists and written, and while compaction rewrites the log, so
+    // that compaction never starts while taken records are still on their way to the old log
+    private final ReentrantLock logLock = new ReentrantLock();
+
+    // Changes to one key are applied and queued under its stripe, so that they are logged in the order they were
+    // applied; changes to different keys only contend for the brief queueing under pendingLock
+    private final Object[] keyStripes = new Object[64];
+
+    private final Object pendingLock = new Object();
+    private List<ByteBuffer> pendingRecords = new ArrayList<>();
+    private List<CompletableFuture<Void>> pendingCommits = new ArrayList<>();
+    private boolean closed;
+
+    private long generation;
+    private List<Entry> recoveredEntries;
+    private volatile Supplier<List<Entry>> snapshotSupplier;
+
+    private MemoryJournal(Path directory, Duration commitInterval, long compactionThresholdBytes) throws IOException {
+        this.directory = directory;
+        this.commitIntervalNanos = commitInterval.toNanos();
+        this.compactionThresholdBytes = compactionThresholdBytes;
+        for (int i = 0; i < keyStripes.length; i++) {
+            keyStripes[i] = new Object();
+        }
+        Files.createDirectories(directory);
+
+        long start = System.nanoTime();
+        this.recoveredEntries = new ArrayList<>();
+        long snapshotGeneration = readSnapshot(recoveredEntries);
+        this.log = FileChannel.open(directory.resolve(LOG_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        recoverLog(snapshotGeneration);
+        LOGGER.atInfo().log("Recovered {} journal entries from {} in {} ms", recoveredEntries.size(), directory,
+                (System.nanoTime() - start) / 1_000_000);
+
+        this.committer = Thread.ofPlatform().name("memory-journal-committer").daemon(true).start(this::commitLoop);
+    }
+
+    public static MemoryJournal open(Path directory) throws IOException {
+        return open(directory, Duration.ofMillis(10), 64L * 1024 * 1024);
+    }
+
+    /**
+     * @param commitInterval           How long appends are collected before they are written and fsynced together
+     * @param compactionThresholdBytes Log size above which the log is folded into a new snapshot
+     */
+    public static MemoryJournal open(Path directory, Duration commitInterval, long compactionThresholdBytes) throws IOException {
+        return new MemoryJournal(directory, commitInterval, compactionThresholdBytes);
+    }
+
+    /**
+     * Hand over the entries read during recovery, in the order they must be applied. Can only be called once.
+     */
+    List<Entry> takeRecoveredEntries() {
+        List<Entry> entries = recoveredEntries;
+        recoveredEntries = null;
+        if (entries == null) {
+            throw new IllegalStateException("Recovered entries were already taken");
+        }
+        return entries;
+    }
+
+    /**
+     * Set where compaction gets the current contents of the store from.
+     */
+    void attach(Supplier<List<Entry>> snapshotSupplier) {
+        this.snapshotSupplier = snapshotSupplier;
+    }
+
+    /**
+     * Apply a change to one key of the store and record it. Both happen atomically with respect to compaction,
+     * and changes to the same key are logged in the order they were applied.
+     *
+     * @param key    The key the change applies to
+     * @param change Applies the change to the in-memory store and returns the entries describing it
+     * @return A future completed once the records are durable on disk
+     */
+    CompletableFuture<Void> append(String key, Supplier<List<Entry>> change) {
+        CompletableFuture<Void> committed = new CompletableFuture<>();
+        compactionLock.readLock().lock();
+        try {
+            synchronized (keyStripes[Math.floorMod(key.hashCode(), keyStripes.length)]) {
+                synchronized (pendingLock) {
+                    if (closed) {
+                        throw new IllegalStateException("Journal has been closed");
+                    }
+                }
+                List<ByteBuffer> records = new ArrayList<>();
+                for (Entry entry : change.get()) {
+                    records.add(encode(entry));
+                }
+                synchronized (pendingLock) {
+                    pendingRecords.addAll(records);
+                    pendingCommits.add(committed);
+                    pendingLock.notifyAll();
+                }
+            }
+        } finally {
+            compactionLock.readLock().unlock();
+        }
+        return committed;
+    }
+
+    /**
+     * Block until everything appended so far is durable.
+     */
+    public void sync() {
+        CompletableFuture<Void> marker = new CompletableFuture<>();
+        synchronized (pendingLock) {
+            if (closed) {
+                return;
+            }
+            pendingCommits.add(marker);
+            pendingLock.notifyAll();
+        }
+        marker.join();
+    }
+
+    /**
+     * Fold the log into a new snapshot of the store's current contents and truncate it.
+     */
+    public void compact() throws IOException {
+        Supplier<List<Entry>> supplier = snapshotSupplier;
+        if (supplier == null) {
+            return;
+        }
+        compactionLock.writeLock().lock();
+        logLock.lock();
+        try {
+            commitPending();
+            List<Entry> snapshot = supplier.get();
+            long nextGeneration = generation + 1;
+            writeSnapshot(snapshot, nextGeneration);
+            log.truncate(0);
+            writeHeader(log, nextGeneration);
+            log.force(true);
+            generation = nextGeneration;
+            LOGGER.atInfo().log("Compacted memory journal into a snapshot of {} entries", snapshot.size());
+        } finally {
+            logLock.unlock();
+            compactionLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        // Waits for appends under way, so that none queues records after the final commit
+        compactionLock.writeLock().lock();
+        try {
+            synchronized (pendingLock) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                pendingLock.notifyAll();
+            }
+        } finally {
+            compactionLock.writeLock().unlock();
+        }
+        try {
+            committer.join();
+            commitPending();
+            log.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close memory journal", e);
+        }
+    }
+
+    private void commitLoop() {
+        while (true) {
+            synchronized (pendingLock) {
+                try {
+                    if (!closed && pendingCommits.isEmpty()) {
+                        pendingLock.wait();
+                    }
+                    if (!closed) {
+                        // Give concurrent writers a moment to join this group
+                        long remaining = commitIntervalNanos;
+                        long deadline = System.nanoTime() + remaining;
+                        while (!closed && remaining > 0) {
+                            pendingLock.wait(remaining / 1_000_000, (int) (remaining % 1_000_000));
+                            remaining = deadline - System.nanoTime();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+            }
+            try {
+                commitPending();
+                if (log.size() > compactionThresholdBytes) {
+                    compact();
+                }
+            } catch (IOException e) {
+                LOGGER.atError().setCause(e).log("Failed to commit memory journal");
+            }
+        }
+    }
+
+    /**
+     * Write and fsync every pending record, then complete the futures of the appends they belong to.
+     */
+    private void commitPending() throws IOException {
+        List<ByteBuffer> records;
+        List<CompletableFuture<Void>> commits;
+        logLock.lock();
+        try {
+            synchronized (pendingLock) {
+                records = pendingRecords;
+                commits = pendingCommits;
+                pendingRecords = new ArrayList<>();
+                pendingCommits = new ArrayList<>();
+            }
+            if (commits.isEmpty()) {
+                return;
+            }
+            try {
+                ByteBuffer[] buffers = records.toArray(ByteBuffer[]::new);
+                log.position(log.size());
+                long remaining = records.stream().mapToLong(ByteBuffer::remaining).sum();
+                while (remaining > 0) {
+                    remaining -= log.write(buffers);
+                }
+                log.force(false);
+            } catch (IOException e) {
+                commits.forEach(commit -> commit.completeExceptionally(e));
+                throw e;
+            }
+        } finally {
+            logLock.unlock();
+        }
+        commits.forEach(commit -> commit.complete(null));
+    }
+
+    private long readSnapshot(List<Entry> entries) throws IOException {
+        Path snapshotPath = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(snapshotPath)) {
+            return 0;
+        }
+        try (FileChannel snapshot = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = snapshot.map(FileChannel.MapMode.READ_ONLY, 0, snapshot.size());
+            long snapshotGeneration = readHeader(buffer, snapshotPath);
+            if (decodeAll(buffer, entries) != buffer.limit()) {
+                throw new IOException("Snapshot " + snapshotPath + " is corrupt");
+            }
+            return snapshotGeneration;
+        }
+    }
+
+    private void recoverLog(long snapshotGeneration) throws IOException {
+        if (log.size() < HEADER_BYTES) {
+            startLog(snapshotGeneration);
+            return;
+        }
+        MappedByteBuffer buffer = log.map(FileChannel.MapMode.READ_ONLY, 0, log.size());
+        long logGeneration = readHeader(buffer, directory.resolve(LOG_FILE));
+        if (logGeneration != snapshotGeneration) {
+            // The log was already folded into the snapshot before the last shutdown
+            startLog(snapshotGeneration);
+            return;
+        }
+        generation = logGeneration;
+        long validLength = decodeAll(buffer, recoveredEntries);
+        if (validLength < log.size()) {
+            LOGGER.atWarn().log("Discarding {} bytes of incomplete records at the end of the memory journal",
+                    log.size() - validLength);
+            log.truncate(validLength);
+            log.force(true);
+        }
+    }
+
+    private void startLog(long logGeneration) throws IOException {
+        generation = logGeneration;
+        log.truncate(0);
+        writeHeader(log, logGeneration);
+        log.force(true);
+    }
+
+    private void writeSnapshot(List<Entry> entries, long snapshotGeneration) throws IOException {
+        Path snapshotPath = directory.resolve(SNAPSHOT_FILE);
+        Path tempPath = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel snapshot = FileChannel.open(tempPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(snapshot, snapshotGeneration);
+            for (Entry entry : entries) {
+                ByteBuffer record = encode(entry);
+                while (record.hasRemaining()) {
+                    snapshot.write(record);
+                }
+            }
+            snapshot.force(true);
+        }
+        Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeHeader(FileChannel channel, long headerGeneration) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putLong(headerGeneration).flip();
+        channel.position(0);
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+
+    private static long readHeader(ByteBuffer buffer, Path path) throws IOException {
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            throw new IOException(path + " is not a memory journal file");
+        }
+        return buffer.getLong();
+    }
+
+    /**
+     * Decode records until the end of the buffer or the first incomplete or corrupt record.
+     *
+     * @return The offset just past the last valid record
+     */
+    private static long decodeAll(ByteBuffer buffer, List<Entry> entries) {
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= Integer.BYTES) {
+            int start = buffer.position();
+            int bodyLength = buffer.getInt();
+            if (bodyLength <= 0 || buffer.remaining() < bodyLength + Integer.BYTES) {
+                return start;
+            }
+            ByteBuffer body = buffer.slice(buffer.position(), bodyLength);
+            crc.reset();
+            crc.update(body.duplicate());
+            buffer.position(buffer.position() + bodyLength);
+            if ((int) crc.getValue() != buffer.getInt()) {
+                return start;
+            }
+            entries.add(decode(body));
+        }
+        return buffer.position();
+    }
+
+    private static ByteBuffer encode(Entry entry) {
+        byte[] key = entry.key().getBytes(StandardCharsets.UTF_8);
+        byte[] memory = entry.memory().getBytes(StandardCharsets.UTF_8);
+        int embeddingLength = entry.embedding() == null ? 0 : entry.embedding().length;
+        int bodyLength = 1 + Integer.BYTES + key.length + Integer.BYTES + memory.length
+                + Integer.BYTES + embeddingLength * Float.BYTES;
+
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + bodyLength + Integer.BYTES);
+        record.putInt(bodyLength);
+        record.put((byte) entry.operation().ordinal());
+        record.putInt(key.length).put(key);
+        record.putInt(memory.length).put(memory);
+        record.putInt(embeddingLength);
+        for (int i = 0; i < embeddingLength; i++) {
+            record.putFloat(entry.embedding()[i]);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), Integer.BYTES, bodyLength);
+        record.putInt((int) crc.getValue());
+        return record.flip();
+    }
+
+    private static Entry decode(ByteBuffer body) {
+        Operation operation = Operation.values()[body.get()];
+        String key = readString(body);
+        String memory = readString(body);
+        int embeddingLength = body.getInt();
+        float[] embedding = null;
+        if (embeddingLength > 0) {
+            embedding = new float[embeddingLength];
+            body.asFloatBuffer().get(embedding);
+        }
+        return new Entry(operation, key, memory, embedding);
+    }
+
+    private static String readString(ByteBuffer body) {
+        int length = body.getInt();
+        String value = StandardCharsets.UTF_8.decode(body.slice(body.position(), length)).toString();
+        body.position(body.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,119 @@
+package aiforge.agents;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * The memories stored under one key. Writers take a lock private to the key, so agents writing to different
+ * keys never contend. Readers take no lock at all: they read the latest published {@link Version} and get an
+ * immutable view of it.
+ * <p>
+ * Appends write into spare capacity past the end of the current version and then publish a longer version
+ * over the same array, so slots a reader can see are never written again and taking a snapshot is O(1).
+ * Removals always copy into a new array, leaving earlier snapshots untouched.
+ */
+final class MemoryLog {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private record Version(Memory[] items, int size) {
+    }
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile Version current = new Version(new Memory[INITIAL_CAPACITY], 0);
+
+    void add(Memory memory) {
+        writeLock.lock();
+        try {
+            Version version = current;
+            Memory[] items = version.items();
+            if (version.size() == items.length) {
+                items = Arrays.copyOf(items, items.length * 2);
+            }
+            items[version.size()] = memory;
+            current = new Version(items, version.size() + 1);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Remove every memory matching a filter.
+     *
+     * @return The removed memories, in order
+     */
+    List<Memory> removeIf(Predicate<Memory> filter) {
+        return remove(filter, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Remove the oldest memory matching a filter, if there is one.
+     */
+    boolean removeFirst(Predicate<Memory> filter) {
+        return !remove(filter, 1).isEmpty();
+    }
+
+    /**
+     * @return An immutable view of the memories as they are right now, oldest first
+     */
+    List<Memory> snapshot() {
+        Version version = current;
+        return new Snapshot(version.items(), version.size());
+    }
+
+    boolean isEmpty() {
+        return current.size() == 0;
+    }
+
+    private List<Memory> remove(Predicate<Memory> filter, int limit) {
+        writeLock.lock();
+        try {
+            Version version = current;
+            List<Memory> removed = new ArrayList<>();
+            Memory[] kept = new Memory[Math.max(INITIAL_CAPACITY, version.items().length)];
+            int size = 0;
+            for (int i = 0; i < version.size(); i++) {
+                Memory memory = version.items()[i];
+                if (removed.size() < limit && filter.test(memory)) {
+                    removed.add(memory);
+                } else {
+                    kept[size++] = memory;
+                }
+            }
+            if (!removed.isEmpty()) {
+                current = new Version(kept, size);
+            }
+            return removed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static final class Snapshot extends AbstractList<Memory> implements RandomAccess {
+
+        private final Memory[] items;
+        private final int size;
+
+        private Snapshot(Memory[] items, int size) {
+            this.items = items;
+            this.size = size;
+        }
+
+        @Override
+        public Memory get(int index) {
+            Objects.checkIndex(index, size);
+            return items[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
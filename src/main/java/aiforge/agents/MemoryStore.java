@@ -1,33 +1,93 @@
 package aiforge.agents;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-public abstract class MemoryStore {
+/**
+ * Memories grouped by key, safe to share between agents running concurrently. Writes lock only the key they
+ * touch, and reads never lock: every list handed out is an immutable snapshot of its key at the time of the
+ * call. A store created with a {@link MemoryJournal} records every change to it, and restores its previous
+ * contents from the journal when it is opened.
+ */
+public abstract class MemoryStore implements AutoCloseable {
 
-    protected final Map<String, List<Memory>> memories;
+    private final ConcurrentMap<String, MemoryLog> memories;
+    private final MemoryJournal journal;
 
     public MemoryStore() {
-        this.memories = new HashMap<>();
+        this(null);
+    }
+
+    protected MemoryStore(MemoryJournal journal) {
+        this.memories = new ConcurrentHashMap<>();
+        this.journal = journal;
     }
 
     public void storeMemory(String key, Memory memory) {
+        storeMemory(key, memory, null);
+    }
+
+    /**
+     * @param embedding Persisted alongside the memory so recovery does not need to compute it again; may be null
+     */
+    protected void storeMemory(String key, Memory memory, float[] embedding) {
         if (key == null || key.isBlank() || memory == null || memory.getMemory().isBlank()) {
             return; // Ignore invalid inputs
         }
-        memories.computeIfAbsent(key, k -> new ArrayList<>()).add(memory);
+        if (journal == null) {
+            addMemory(key, memory);
+            return;
+        }
+        journal.append(key, () -> {
+            addMemory(key, memory);
+            return List.of(MemoryJournal.Entry.store(key, memory.getMemory(), embedding));
+        });
     }
 
+    /**
+     * @return An immutable snapshot of the memories under a key, oldest first
+     */
     public List<Memory> getMemoriesByKey(String key) {
-        return memories.getOrDefault(key, new ArrayList<>());
+        MemoryLog memoryLog = memories.get(key);
+        return memoryLog == null ? List.of() : memoryLog.snapshot();
     }
 
+    /**
+     * Remove specific memories (compared by identity) from a key, e.g. after they have been summarized.
+     */
+    public void removeMemories(String key, Collection<Memory> toRemove) {
+        MemoryLog memoryLog = memories.get(key);
+        if (memoryLog == null) {
+            return;
+        }
+        Set<Memory> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        removed.addAll(toRemove);
+        if (journal == null) {
+            memoryLog.removeIf(removed::contains);
+            return;
+        }
+        journal.append(key, () -> memoryLog.removeIf(removed::contains).stream()
+                .map(memory -> MemoryJournal.Entry.remove(key, memory.getMemory()))
+                .toList());
+    }
+
+    /**
+     * @return An immutable snapshot of every key's memories
+     */
     public Map<String, List<Memory>> getAllMemories() {
-        return new HashMap<>(memories);
+        Map<String, List<Memory>> allMemories = new HashMap<>();
+        memories.forEach((key, memoryLog) -> {
+            if (!memoryLog.isEmpty()) {
+                allMemories.put(key, memoryLog.snapshot());
+            }
+        });
+        return Collections.unmodifiableMap(allMemories);
     }
 
     public String getAllMemoriesAsString() {
         StringBuilder allMemories = new StringBuilder();
-        memories.forEach((key, memoryList) -> {
+        getAllMemories().forEach((key, memoryList) -> {
             allMemories.append("Key: ").append(key).append("\n");
             for (Memory memory : memoryList) {
                 allMemories.append("- ").append(memory.getMemory()).append("\n");
@@ -35,4 +95,63 @@ public abstract class MemoryStore {
         });
         return allMemories.toString().trim();
     }
+
+    /**
+     * Block until every change made so far is durable. Does nothing for a store without a journal.
+     */
+    public void sync() {
+        if (journal != null) {
+            journal.sync();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Replay the journal into this store and start taking snapshots from it. Called once by the factory
+     * methods of subclasses, after construction has finished.
+     */
+    protected void recover() {
+        if (journal == null) {
+            return;
+        }
+        for (MemoryJournal.Entry entry : journal.takeRecoveredEntries()) {
+            switch (entry.operation()) {
+                case STORE -> restoreMemory(entry.key(), new Memory(entry.memory()), entry.embedding());
+                case REMOVE -> {
+                    MemoryLog memoryLog = memories.get(entry.key());
+                    if (memoryLog != null) {
+                        memoryLog.removeFirst(memory -> memory.getMemory().equals(entry.memory()));
+                    }
+                }
+            }
+        }
+        journal.attach(this::snapshot);
+    }
+
+    /**
+     * Add a memory read back from the journal.
+     */
+    protected void restoreMemory(String key, Memory memory, float[] embedding) {
+        addMemory(key, memory);
+    }
+
+    /**
+     * @return One entry per memory currently in the store, used to write a snapshot of it
+     */
+    protected List<MemoryJournal.Entry> snapshot() {
+        List<MemoryJournal.Entry> entries = new ArrayList<>();
+        getAllMemories().forEach((key, memoryList) -> memoryList.forEach(
+                memory -> entries.add(MemoryJournal.Entry.store(key, memory.getMemory(), null))));
+        return entries;
+    }
+
+    private void addMemory(String key, Memory memory) {
+        memories.computeIfAbsent(key, k -> new MemoryLog()).add(memory);
+    }
 }
@@ -0,0 +1,34 @@
+package aiforge.agents;
+
+import aiforge.utils.OllamaApiClient;
+
+import java.io.IOException;
+
+/**
+ * Embedder backed by an embedding model served by Ollama's {@code /api/embeddings} endpoint.
+ */
+public class OllamaEmbedder implements Embedder {
+
+    public static final String DEFAULT_MODEL = "nomic-embed-text";
+
+    private final OllamaApiClient client;
+    private final String model;
+
+    public OllamaEmbedder(OllamaApiClient client) {
+        this(client, DEFAULT_MODEL);
+    }
+
+    public OllamaEmbedder(OllamaApiClient client, String model) {
+        this.client = client;
+        this.model = model;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        try {
+            return client.embed(model, text);
+        } catch (IOException e) {
+            throw new EmbeddingException("Failed to embed text with " + model, e);
+        }
+    }
+}
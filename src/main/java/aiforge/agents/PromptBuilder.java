@@ -0,0 +1,71 @@
+package aiforge.agents;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Assembles a prompt from free text and lists of context items, capping each list at a token budget so the
+ * prompt cannot outgrow the model's context window however much context is available.
+ * <p>
+ * Token counts are estimated at four characters per token, which is close enough for budgeting English text.
+ */
+public class PromptBuilder {
+
+    private static final int CHARS_PER_TOKEN = 4;
+
+    /**
+     * Which items of a section to keep when they do not all fit in its budget.
+     */
+    public enum Keep {
+        /** Keep items from the start of the list, e.g. when it is sorted by relevance. */
+        FIRST,
+        /** Keep items from the end of the list, e.g. when it is in chronological order. */
+        NEWEST
+    }
+
+    private final StringBuilder prompt = new StringBuilder();
+
+    public static int estimateTokens(String text) {
+        return (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    public PromptBuilder text(String text) {
+        prompt.append(text.strip()).append("\n\n");
+        return this;
+    }
+
+    /**
+     * Add a titled list of items, including as many as fit in {@code maxTokens}. Items are kept in their original
+     * order in the prompt. An empty section is rendered as "None".
+     */
+    public PromptBuilder section(String title, List<String> items, int maxTokens, Keep keep) {
+        List<String> included = new ArrayList<>();
+        int tokens = 0;
+        for (int i = 0; i < items.size(); i++) {
+            String item = items.get(keep == Keep.FIRST ? i : items.size() - 1 - i);
+            int itemTokens = estimateTokens(item) + 1;
+            if (tokens + itemTokens > maxTokens) {
+                break;
+            }
+            tokens += itemTokens;
+            included.add(item);
+        }
+        if (keep == Keep.NEWEST) {
+            included = included.reversed();
+        }
+
+        prompt.append(title).append('\n');
+        if (included.isEmpty()) {
+            prompt.append("None\n");
+        }
+        for (String item : included) {
+            prompt.append("- ").append(item).append('\n');
+        }
+        prompt.append('\n');
+        return this;
+    }
+
+    public String build() {
+        return prompt.toString().strip() + "\n";
+    }
+}
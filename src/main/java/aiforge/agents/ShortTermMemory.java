@@ -1,12 +1,78 @@
 package aiforge.agents;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
 
+/**
+ * The agent's own recent memories. Memories that repeat one already held are refused, as judged by a
+ * {@link DuplicateDetector}, so paraphrased repeats do not inflate every later prompt.
+ */
 public class ShortTermMemory extends MemoryStore {
 
     private static final String SELF_KEY = "Self";
 
-    public void storeMemory(Memory memory) {
+    private final DuplicateDetector duplicateDetector;
+
+    public ShortTermMemory() {
+        this(DuplicateDetector.create());
+    }
+
+    public ShortTermMemory(DuplicateDetector duplicateDetector) {
+        this(duplicateDetector, null);
+    }
+
+    private ShortTermMemory(DuplicateDetector duplicateDetector, MemoryJournal journal) {
+        super(journal);
+        this.duplicateDetector = duplicateDetector;
+    }
+
+    /**
+     * Open a short-term memory that is persisted to a journal in the given directory, restoring whatever it
+     * held when it was last closed.
+     */
+    public static ShortTermMemory open(Path directory) throws IOException {
+        return open(directory, DuplicateDetector.create());
+    }
+
+    public static ShortTermMemory open(Path directory, DuplicateDetector duplicateDetector) throws IOException {
+        ShortTermMemory memory = new ShortTermMemory(duplicateDetector, MemoryJournal.open(directory));
+        memory.recover();
+        return memory;
+    }
+
+    /**
+     * @return Whether the memory was stored, i.e. it was valid and not a duplicate
+     */
+    public boolean storeMemory(Memory memory) {
+        if (memory == null || memory.getMemory().isBlank()
+                || duplicateDetector.register(memory.getMemory()) != DuplicateDetector.Verdict.UNIQUE) {
+            return false;
+        }
         super.storeMemory(SELF_KEY, memory);
+        return true;
+    }
+
+    /**
+     * @return The agent's own memories, oldest first
+     */
+    public List<Memory> getMemories() {
+        return getMemoriesByKey(SELF_KEY);
+    }
+
+    public void removeMemories(Collection<Memory> toRemove) {
+        super.removeMemories(SELF_KEY, toRemove);
+        toRemove.forEach(memory -> duplicateDetector.unregister(memory.getMemory()));
+    }
+
+    public DuplicateDetector.Stats duplicateStats() {
+        return duplicateDetector.stats();
+    }
+
+    @Override
+    protected void recover() {
+        super.recover();
+        getMemories().forEach(memory -> duplicateDetector.register(memory.getMemory()));
     }
 }
@@ -1,15 +1,18 @@
 package aiforge.agents;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import aiforge.utils.Json;
+import com.fasterxml.jackson.databind.ObjectReader;
+
 import java.util.List;
 import java.util.stream.Collectors;
 
 public record Task(String title, String description, List<String> detailedRequirements) {
 
+    private static final ObjectReader READER = Json.MAPPER.readerFor(Task.class);
+
     public static Task fromJson(String json) {
-        ObjectMapper objectMapper = new ObjectMapper();
         try {
-            return objectMapper.readValue(json, Task.class);
+            return READER.readValue(json);
         } catch (Exception e) {
             throw new RuntimeException("Failed to parse JSON into Task", e);
         }
@@ -1,45 +1,73 @@
 package aiforge.ai;
 
 
-import java.util.ArrayList;
-import java.util.List;
+import java.time.Duration;
+import java.time.Instant;
 
-public record AIRequest(String system, String prompt, String id, StructuredFormat structuredFormat) {
+/**
+ * @param temperature Sampling temperature, or null to use the backend's default
+ * @param priority    Scheduling priority; higher priorities are processed first
+ * @param deadline    Time after which the response is no longer useful, or null for no deadline
+ * @param sessionId   Requests sharing a session id continue one conversation, so a backend may carry state
+ *                    from one to the next; null for a stand-alone request
+ */
+public record AIRequest(String system, String prompt, String id, StructuredFormat structuredFormat, Double temperature,
+                        Priority priority, Instant deadline, String sessionId) {
+
+    public AIRequest {
+        if (priority == null) {
+            priority = Priority.NORMAL;
+        }
+    }
 
     public static AIRequest of(String system, String prompt, StructuredFormat structuredFormat) {
-        return new AIRequest(system, prompt, "", structuredFormat);
+        return new AIRequest(system, prompt, "", structuredFormat, null, Priority.NORMAL, null, null);
     }
 
     public static AIRequest of(AIRequest request, String id, StructuredFormat structuredFormat) {
-        return new AIRequest(request.system(), request.prompt(), id, structuredFormat);
+        return new AIRequest(request.system(), request.prompt(), id, structuredFormat, request.temperature(),
+                request.priority(), request.deadline(), request.sessionId());
     }
 
     public static AIRequest of(String system, String prompt) {
-        return new AIRequest(system, prompt, "", null);
+        return new AIRequest(system, prompt, "", null, null, Priority.NORMAL, null, null);
     }
 
     public static AIRequest of(AIRequest request, String id) {
-        return new AIRequest(request.system(), request.prompt(), id, request.structuredFormat());
+        return of(request, id, request.structuredFormat());
     }
 
-    public static class StructuredFormat {
-        private final List<Property> properties = new ArrayList<>();
+    public AIRequest withTemperature(Double temperature) {
+        return new AIRequest(system, prompt, id, structuredFormat, temperature, priority, deadline, sessionId);
+    }
 
-        public record Property(String name, String type, boolean required, Property items) {
-        }
+    public AIRequest withPriority(Priority priority) {
+        return new AIRequest(system, prompt, id, structuredFormat, temperature, priority, deadline, sessionId);
+    }
 
-        public StructuredFormat addProperty(String name, String type, boolean required) {
-            properties.add(new Property(name, type, required, null));
-            return this;
-        }
+    public AIRequest withDeadline(Instant deadline) {
+        return new AIRequest(system, prompt, id, structuredFormat, temperature, priority, deadline, sessionId);
+    }
 
-        public StructuredFormat addArrayProperty(String name, String itemType, boolean required) {
-            properties.add(new Property(name, "array", required, new Property(null, itemType, false, null)));
-            return this;
-        }
+    public AIRequest withTimeout(Duration timeout) {
+        return withDeadline(Instant.now().plus(timeout));
+    }
 
-        public List<Property> properties() {
-            return properties;
-        }
+    public AIRequest withSession(String sessionId) {
+        return new AIRequest(system, prompt, id, structuredFormat, temperature, priority, deadline, sessionId);
+    }
+
+    /**
+     * @return True if the backend is asked to always pick the most likely token, so the same request
+     * yields the same response
+     */
+    public boolean isDeterministic() {
+        return temperature != null && temperature == 0.0;
+    }
+
+    public enum Priority {
+        LOW,
+        NORMAL,
+        HIGH
     }
 }
@@ -1,11 +1,29 @@
 package aiforge.ai;
 
-public record AIResponse(String response, String id) {
+/**
+ * @param tokens          Number of tokens the backend generated for the response, or 0 if it does not report them
+ * @param generationNanos Time the backend reports having spent generating those tokens (Ollama's
+ *                        {@code eval_duration}), or 0 if it does not report it
+ * @param totalNanos      Time the backend reports having spent on the whole request (Ollama's
+ *                        {@code total_duration}), or 0 if it does not report it
+ */
+public record AIResponse(String response, String id, int tokens, long generationNanos, long totalNanos) {
     public static AIResponse of(String response) {
-        return new AIResponse(response, "");
+        return new AIResponse(response, "", 0, 0, 0);
     }
 
     public static AIResponse of(String response, String id) {
-        return new AIResponse(response, id);
+        return new AIResponse(response, id, 0, 0, 0);
+    }
+
+    public static AIResponse of(String response, String id, int tokens) {
+        return new AIResponse(response, id, tokens, 0, 0);
+    }
+
+    /**
+     * @return The same response under a different request ID
+     */
+    public AIResponse withId(String id) {
+        return new AIResponse(response, id, tokens, generationNanos, totalNanos);
     }
 }
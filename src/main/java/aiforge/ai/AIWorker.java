@@ -1,6 +1,8 @@
 package aiforge.ai;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public interface AIWorker {
     /**
@@ -11,8 +13,39 @@ public interface AIWorker {
      */
     String submitRequest(AIRequest request);
 
+    /**
+     * Collect the response to a request made with {@link #submitRequest(AIRequest)}. A response can only be
+     * collected once.
+     *
+     * @param requestId The ID returned by {@link #submitRequest(AIRequest)}
+     * @return The generated text, or empty if the request is still being processed or its ID is unknown
+     * @throws RuntimeException If the request failed, typically an {@link AIWorkerException}
+     */
     Optional<String> getResponse(String requestId);
 
+    /**
+     * Submit a request to the AI worker and get notified as soon as it has been processed.
+     *
+     * @param request The AIRequest object containing context and prompt.
+     * @return A future completed with the response, or exceptionally if the request could not be processed
+     */
+    CompletableFuture<AIResponse> submitAsync(AIRequest request);
+
+    /**
+     * Submit a request to the AI worker and receive the generated text incrementally.
+     * Workers whose backend cannot stream deliver the complete response as a single chunk.
+     *
+     * @param request       The AIRequest object containing context and prompt.
+     * @param tokenListener Called with each chunk of generated text, in order
+     * @return A future completed with the full response once generation has finished
+     */
+    default CompletableFuture<AIResponse> submitStreaming(AIRequest request, Consumer<String> tokenListener) {
+        return submitAsync(request).thenApply(response -> {
+            tokenListener.accept(response.response());
+            return response;
+        });
+    }
+
     /**
      * Shut down the AI worker.
      */
@@ -0,0 +1,15 @@
+package aiforge.ai;
+
+/**
+ * Base class of the errors with which a worker fails a request, so callers can tell them apart from bugs.
+ */
+public class AIWorkerException extends RuntimeException {
+
+    public AIWorkerException(String message) {
+        super(message);
+    }
+
+    public AIWorkerException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,127 @@
+package aiforge.ai;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Base class for workers that implement {@link #submitAsync(AIRequest)} and want the polling API
+ * ({@link #submitRequest(AIRequest)} / {@link #getResponse(String)}) for free.
+ * <p>
+ * Responses that are never collected with {@link #getResponse(String)} expire after a time to live so that
+ * abandoned requests do not accumulate in memory.
+ */
+public abstract class AbstractAIWorker implements AIWorker {
+
+    public static final Duration DEFAULT_RESPONSE_TTL = Duration.ofMinutes(10);
+
+    private final Map<String, StoredResponse> responseMap = new ConcurrentHashMap<>();
+    private final long responseTtlNanos;
+    private volatile long nextPurgeNanos;
+
+    protected AbstractAIWorker() {
+        this(DEFAULT_RESPONSE_TTL);
+    }
+
+    protected AbstractAIWorker(Duration responseTtl) {
+        this.responseTtlNanos = responseTtl.toNanos();
+        this.nextPurgeNanos = System.nanoTime() + responseTtlNanos;
+    }
+
+    @Override
+    public String submitRequest(AIRequest request) {
+        purgeExpiredResponses();
+        String requestId = UUID.randomUUID().toString();
+        submitAsync(AIRequest.of(request, requestId)).whenComplete((response, error) -> {
+            long expiresAtNanos = System.nanoTime() + responseTtlNanos;
+            responseMap.put(requestId, error == null
+                    ? new StoredResponse(response.response(), null, expiresAtNanos)
+                    : new StoredResponse(null, unwrap(error), expiresAtNanos));
+        });
+        return requestId;
+    }
+
+    /**
+     * @throws RuntimeException The error the request failed with, wrapped in a {@link CompletionException} if
+     *                          it is a checked exception
+     */
+    @Override
+    public Optional<String> getResponse(String requestId) {
+        purgeExpiredResponses();
+        StoredResponse stored = responseMap.remove(requestId);
+        if (stored == null || stored.isExpired(System.nanoTime())) {
+            return Optional.empty();
+        }
+        if (stored.error() != null) {
+            throw stored.error() instanceof RuntimeException e ? e : new CompletionException(stored.error());
+        }
+        return Optional.of(stored.response());
+    }
+
+    /**
+     * Drop unclaimed responses older than the time to live. Runs at most once per TTL period.
+     */
+    private void purgeExpiredResponses() {
+        long now = System.nanoTime();
+        if (now - nextPurgeNanos < 0) {
+            return;
+        }
+        nextPurgeNanos = now + responseTtlNanos;
+        responseMap.values().removeIf(stored -> stored.isExpired(now));
+    }
+
+    /**
+     * Assign a fresh ID to the request unless the caller already provided one.
+     */
+    protected static AIRequest withRequestId(AIRequest request) {
+        if (request.id() == null || request.id().isBlank()) {
+            return AIRequest.of(request, UUID.randomUUID().toString());
+        }
+        return request;
+    }
+
+    /**
+     * @return The time left until the request's deadline, or null if it has none
+     * @throws DeadlineExceededException If the deadline has already passed
+     */
+    protected static Duration remainingTime(AIRequest request) {
+        if (request.deadline() == null) {
+            return null;
+        }
+        Duration remaining = Duration.between(Instant.now(), request.deadline());
+        if (remaining.isNegative() || remaining.isZero()) {
+            throw new DeadlineExceededException("Request " + request.id() + " missed its deadline before it was sent");
+        }
+        return remaining;
+    }
+
+    /**
+     * Turn a failed backend call into the error the request fails with: a {@link DeadlineExceededException} if
+     * the call was cut off by the request's deadline, a {@link BackendException} otherwise.
+     */
+    protected static AIWorkerException backendFailure(AIRequest request, String endpoint, IOException cause) {
+        if (request.deadline() != null && !Instant.now().isBefore(request.deadline())) {
+            return new DeadlineExceededException("Request " + request.id() + " to " + endpoint + " missed its deadline", cause);
+        }
+        return new BackendException("Request " + request.id() + " to " + endpoint + " failed", cause);
+    }
+
+    protected static Throwable unwrap(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            return error.getCause();
+        }
+        return error;
+    }
+
+    private record StoredResponse(String response, Throwable error, long expiresAtNanos) {
+
+        boolean isExpired(long nowNanos) {
+            return nowNanos - expiresAtNanos >= 0;
+        }
+    }
+}
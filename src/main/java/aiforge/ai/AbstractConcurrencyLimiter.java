@@ -0,0 +1,151 @@
+package aiforge.ai;
+
+import java.time.Duration;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bookkeeping shared by the limiters: counts requests in flight, blocks {@link #acquire()} at the limit and
+ * lets subclasses move the limit in response to each outcome.
+ */
+abstract class AbstractConcurrencyLimiter implements ConcurrencyLimiter {
+
+    // Weight of the newest sample in the latency average reported by stats()
+    private static final double RECENT_LATENCY_ALPHA = 0.2;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition belowLimit = lock.newCondition();
+    private final int maxLimit;
+    private double limit;
+    private int inFlight;
+    private long successes;
+    private long drops;
+    private double recentLatencyNanos;
+
+    AbstractConcurrencyLimiter(int initialLimit, int maxLimit) {
+        if (initialLimit < 1 || maxLimit < initialLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= initialLimit <= maxLimit");
+        }
+        this.limit = initialLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * @param limit        The current limit, possibly fractional
+     * @param inFlight     Requests in flight when the sampled request completed, including it
+     * @param latencyNanos Latency sample of the completed request
+     * @return The new limit, which is clamped to [1, maxLimit]
+     */
+    abstract double onSample(double limit, int inFlight, long latencyNanos);
+
+    /**
+     * @return The new limit after a dropped request, which is clamped to [1, maxLimit]
+     */
+    abstract double onDrop(double limit);
+
+    @Override
+    public void acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (inFlight >= (int) limit) {
+                belowLimit.await();
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (inFlight >= (int) limit) {
+                return false;
+            }
+            inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onSuccess(long latencyNanos) {
+        lock.lock();
+        try {
+            successes++;
+            recentLatencyNanos = recentLatencyNanos == 0
+                    ? latencyNanos
+                    : RECENT_LATENCY_ALPHA * latencyNanos + (1 - RECENT_LATENCY_ALPHA) * recentLatencyNanos;
+            updateLimit(onSample(limit, inFlight, latencyNanos));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onDropped() {
+        lock.lock();
+        try {
+            drops++;
+            updateLimit(onDrop(limit));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void release() {
+        lock.lock();
+        try {
+            updateLimit(limit);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int limit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int maxLimit() {
+        return maxLimit;
+    }
+
+    @Override
+    public int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Stats stats() {
+        lock.lock();
+        try {
+            return new Stats((int) limit, inFlight, successes, drops, Duration.ofNanos((long) recentLatencyNanos));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Count the finished request out and wake up waiters that now fit under the new limit.
+     */
+    private void updateLimit(double newLimit) {
+        inFlight--;
+        limit = Math.max(1, Math.min(maxLimit, newLimit));
+        belowLimit.signalAll();
+    }
+}
@@ -0,0 +1,47 @@
+package aiforge.ai;
+
+import java.time.Duration;
+
+/**
+ * How a worker's request queue behaves once it holds {@code capacity} requests.
+ *
+ * @param mode     What to do with a request that arrives while the queue is full
+ * @param capacity Maximum number of queued (not yet dispatched) requests
+ * @param timeout  How long {@link Mode#BLOCK} waits for room before rejecting
+ */
+public record AdmissionPolicy(Mode mode, int capacity, Duration timeout) {
+
+    public enum Mode {
+        /** Fail the new request immediately. */
+        REJECT,
+        /** Block the submitter until there is room or the timeout passes, then reject. */
+        BLOCK,
+        /** Admit the new request and fail the oldest queued one to make room. */
+        SHED_OLDEST
+    }
+
+    public AdmissionPolicy {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        if (timeout == null) {
+            timeout = Duration.ZERO;
+        }
+    }
+
+    public static AdmissionPolicy unbounded() {
+        return new AdmissionPolicy(Mode.REJECT, Integer.MAX_VALUE, Duration.ZERO);
+    }
+
+    public static AdmissionPolicy reject(int capacity) {
+        return new AdmissionPolicy(Mode.REJECT, capacity, Duration.ZERO);
+    }
+
+    public static AdmissionPolicy block(int capacity, Duration timeout) {
+        return new AdmissionPolicy(Mode.BLOCK, capacity, timeout);
+    }
+
+    public static AdmissionPolicy shedOldest(int capacity) {
+        return new AdmissionPolicy(Mode.SHED_OLDEST, capacity, Duration.ZERO);
+    }
+}
@@ -0,0 +1,35 @@
+package aiforge.ai;
+
+/**
+ * Additive increase, multiplicative decrease around a fixed latency target.
+ *
+ * @see ConcurrencyLimiter#aimd(int, int, java.time.Duration)
+ */
+class AimdConcurrencyLimiter extends AbstractConcurrencyLimiter {
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final long targetLatencyNanos;
+
+    AimdConcurrencyLimiter(int initialLimit, int maxLimit, long targetLatencyNanos) {
+        super(initialLimit, maxLimit);
+        if (targetLatencyNanos <= 0) {
+            throw new IllegalArgumentException("targetLatency must be positive");
+        }
+        this.targetLatencyNanos = targetLatencyNanos;
+    }
+
+    @Override
+    double onSample(double limit, int inFlight, long latencyNanos) {
+        if (latencyNanos > targetLatencyNanos) {
+            return limit * BACKOFF_RATIO;
+        }
+        // Growing a limit the callers do not reach would only allow a burst to overload the backend later
+        return inFlight * 2 >= limit ? limit + 1 : limit;
+    }
+
+    @Override
+    double onDrop(double limit) {
+        return limit * BACKOFF_RATIO;
+    }
+}
@@ -0,0 +1,12 @@
+package aiforge.ai;
+
+/**
+ * Thrown when the backend could not be reached or answered with an error. Such failures are usually
+ * transient and worth retrying.
+ */
+public class BackendException extends AIWorkerException {
+
+    public BackendException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,17 @@
+package aiforge.ai;
+
+import java.time.Duration;
+
+/**
+ * Snapshot of one backend of a {@link LoadBalancedOllamaWorker}.
+ *
+ * @param healthy     False while the backend is ejected from rotation
+ * @param outstanding Requests currently in flight on the backend
+ * @param limit       Requests the backend's concurrency limiter currently allows in flight
+ * @param tokens      Tokens generated by the backend so far; the difference between two snapshots divided by
+ *                    their interval is the backend's throughput in tokens per second
+ * @param ewmaLatency Moving average of the backend's reported total generation time
+ */
+public record BackendStats(String baseUrl, boolean healthy, int outstanding, int limit, long requests, long failures,
+                           long tokens, Duration ewmaLatency) {
+}
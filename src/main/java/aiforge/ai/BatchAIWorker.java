@@ -0,0 +1,21 @@
+package aiforge.ai;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A worker that can process several requests together more cheaply than one at a time.
+ *
+ * @see BatchingAIWorker
+ */
+public interface BatchAIWorker extends AIWorker {
+
+    /**
+     * Submit a batch of requests.
+     *
+     * @param requests Requests to process, each with an ID
+     * @return One future per request, in the same order, each completed with the response for that
+     * request's ID as soon as it is available
+     */
+    List<CompletableFuture<AIResponse>> submitBatch(List<AIRequest> requests);
+}
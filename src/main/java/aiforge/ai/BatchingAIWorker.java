@@ -0,0 +1,249 @@
+package aiforge.ai;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Decorator that collects requests for a short window and hands them to a {@link BatchAIWorker} together.
+ * <p>
+ * A batch is sent once {@code maxBatchSize} requests have arrived or {@code window} has passed since the
+ * first of them, whichever comes first. Every request still gets its own future, completed as soon as the
+ * delegate answers it. A wider window yields bigger batches at the cost of added latency; {@link #stats()}
+ * reports both sides of that trade-off. Streaming requests bypass the batch and go straight to the delegate.
+ * <p>
+ * Batches whose window closes are handed to the delegate on a virtual thread of their own, so a delegate that
+ * is slow to accept a batch does not hold up the timer closing later windows.
+ * <p>
+ * In front of an {@link OpenAIWorker}, each batch becomes one job of the provider's Batch API, which answers
+ * within minutes rather than seconds; use it for background work such as task generation, not for requests a
+ * user is waiting on.
+ */
+public class BatchingAIWorker extends AbstractAIWorker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchingAIWorker.class);
+
+    public static final Duration DEFAULT_WINDOW = Duration.ofMillis(10);
+    public static final int DEFAULT_MAX_BATCH_SIZE = 16;
+
+    private final BatchAIWorker delegate;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("batching-timer").daemon(true).factory());
+    private final ExecutorService sender = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Object lock = new Object();
+    private List<Pending> pending = new ArrayList<>();
+    private long batchNumber;
+    private boolean shutdown;
+
+    private final long createdNanos = System.nanoTime();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder totalWindowWaitNanos = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    private BatchingAIWorker(Builder builder) {
+        this.delegate = builder.delegate;
+        this.windowNanos = builder.window.toNanos();
+        this.maxBatchSize = builder.maxBatchSize;
+    }
+
+    @Override
+    public CompletableFuture<AIResponse> submitAsync(AIRequest request) {
+        Pending entry = new Pending(withRequestId(request), new CompletableFuture<>(), System.nanoTime());
+        List<Pending> full = null;
+        synchronized (lock) {
+            if (shutdown) {
+                return CompletableFuture.failedFuture(new RejectedExecutionException("Worker has been shut down"));
+            }
+            pending.add(entry);
+            if (pending.size() >= maxBatchSize) {
+                full = takeBatch();
+            } else if (pending.size() == 1) {
+                long batch = batchNumber;
+                timer.schedule(() -> flush(batch), windowNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+        return entry.future();
+    }
+
+    @Override
+    public CompletableFuture<AIResponse> submitStreaming(AIRequest request, Consumer<String> tokenListener) {
+        return delegate.submitStreaming(request, tokenListener);
+    }
+
+    /**
+     * Send the requests collected so far without waiting for the window to close.
+     */
+    public void flush() {
+        List<Pending> batch;
+        synchronized (lock) {
+            batch = takeBatch();
+        }
+        send(batch);
+    }
+
+    @Override
+    public void shutdown() {
+        LOGGER.atInfo().log("Shutting down BatchingAIWorker...");
+        List<Pending> batch;
+        synchronized (lock) {
+            shutdown = true;
+            batch = takeBatch();
+        }
+        send(batch);
+        timer.shutdownNow();
+        // Waits for a flush that is already running to hand over its batch, then for the batches handed over to
+        // reach the delegate before it shuts down
+        timer.close();
+        sender.close();
+        delegate.shutdown();
+    }
+
+    public BatchStats stats() {
+        long batchCount = batches.sum();
+        long requestCount = requests.sum();
+        long completedCount = completed.sum();
+        double elapsedSeconds = (System.nanoTime() - createdNanos) / 1e9;
+        return new BatchStats(
+                batchCount,
+                requestCount,
+                batchCount == 0 ? 0 : (double) requestCount / batchCount,
+                Duration.ofNanos(requestCount == 0 ? 0 : totalWindowWaitNanos.sum() / requestCount),
+                Duration.ofNanos(completedCount == 0 ? 0 : totalLatencyNanos.sum() / completedCount),
+                Duration.ofNanos(maxLatencyNanos.get()),
+                elapsedSeconds == 0 ? 0 : completedCount / elapsedSeconds);
+    }
+
+    /**
+     * Send the batch the timer was started for, unless it has already gone out because it filled up.
+     * Runs on the timer thread, so the batch is sent from another thread.
+     */
+    private void flush(long batch) {
+        List<Pending> due;
+        synchronized (lock) {
+            if (batch != batchNumber) {
+                return;
+            }
+            due = takeBatch();
+        }
+        try {
+            sender.execute(() -> send(due));
+        } catch (RejectedExecutionException e) {
+            due.forEach(entry -> entry.future().completeExceptionally(e));
+        }
+    }
+
+    private List<Pending> takeBatch() {
+        List<Pending> batch = pending;
+        pending = new ArrayList<>();
+        batchNumber++;
+        return batch;
+    }
+
+    private void send(List<Pending> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long sentNanos = System.nanoTime();
+        batches.increment();
+        requests.add(batch.size());
+        List<AIRequest> batchRequests = new ArrayList<>(batch.size());
+        for (Pending entry : batch) {
+            totalWindowWaitNanos.add(sentNanos - entry.submittedNanos());
+            batchRequests.add(entry.request());
+        }
+
+        List<CompletableFuture<AIResponse>> responses;
+        try {
+            responses = delegate.submitBatch(batchRequests);
+        } catch (RuntimeException e) {
+            LOGGER.atError().setCause(e).log("Batch of {} requests could not be submitted", batch.size());
+            batch.forEach(entry -> entry.future().completeExceptionally(e));
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            Pending entry = batch.get(i);
+            responses.get(i).whenComplete((response, error) -> {
+                long latency = System.nanoTime() - entry.submittedNanos();
+                totalLatencyNanos.add(latency);
+                maxLatencyNanos.accumulateAndGet(latency, Math::max);
+                completed.increment();
+                if (error != null) {
+                    entry.future().completeExceptionally(unwrap(error));
+                } else {
+                    entry.future().complete(response.withId(entry.request().id()));
+                }
+            });
+        }
+    }
+
+    private record Pending(AIRequest request, CompletableFuture<AIResponse> future, long submittedNanos) {
+    }
+
+    /**
+     * @param batches           Batches handed to the delegate
+     * @param requests          Requests sent in those batches
+     * @param averageBatchSize  Mean number of requests per batch
+     * @param averageWindowWait Mean time a request waited for its batch to be sent
+     * @param averageLatency    Mean time from submission to response, including the window
+     * @param maxLatency        Longest time from submission to response
+     * @param throughput        Responses per second since the worker was created
+     */
+    public record BatchStats(long batches, long requests, double averageBatchSize, Duration averageWindowWait,
+                             Duration averageLatency, Duration maxLatency, double throughput) {
+    }
+
+    public static class Builder {
+
+        private final BatchAIWorker delegate;
+        private Duration window = DEFAULT_WINDOW;
+        private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+        public Builder(BatchAIWorker delegate) {
+            this.delegate = delegate;
+        }
+
+        /**
+         * @param window How long to wait after the first request of a batch for more to arrive
+         */
+        public Builder window(Duration window) {
+            if (window.isNegative() || window.isZero()) {
+                throw new IllegalArgumentException("window must be positive");
+            }
+            this.window = window;
+            return this;
+        }
+
+        public Builder maxBatchSize(int maxBatchSize) {
+            if (maxBatchSize < 1) {
+                throw new IllegalArgumentException("maxBatchSize must be at least 1");
+            }
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        public BatchingAIWorker build() {
+            return new BatchingAIWorker(this);
+        }
+    }
+}
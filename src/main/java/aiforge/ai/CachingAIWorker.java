@@ -0,0 +1,263 @@
+package aiforge.ai;
+
+import aiforge.utils.Json;
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Decorator that answers repeated requests from an exact-match cache instead of calling the backend.
+ * <p>
+ * Requests are keyed by their {@link RequestFingerprint} and the configured model. The cache is bounded
+ * by entry count and by (approximate) size in bytes, evicting the least recently used entries first, and
+ * entries expire after a fixed time to live. When a persistence file is configured the cache is loaded from
+ * it on construction and written back on {@link #shutdown()} or {@link #flush()}, so a restarted process
+ * can skip the backend entirely for requests it has seen before. Requests in a session always go to the backend.
+ */
+public class CachingAIWorker extends AbstractAIWorker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingAIWorker.class);
+
+    // Rough per-entry overhead of the key, entry object and map node
+    private static final long ENTRY_OVERHEAD_BYTES = 256;
+
+    private final AIWorker delegate;
+    private final String model;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final Duration ttl;
+    private final Path persistencePath;
+    private final boolean deterministicOnly;
+
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private CachingAIWorker(Builder builder) {
+        this.delegate = builder.delegate;
+        this.model = builder.model;
+        this.maxEntries = builder.maxEntries;
+        this.maxBytes = builder.maxBytes;
+        this.ttl = builder.ttl;
+        this.persistencePath = builder.persistencePath;
+        this.deterministicOnly = builder.deterministicOnly;
+        if (persistencePath != null) {
+            load();
+        }
+    }
+
+    @Override
+    public CompletableFuture<AIResponse> submitAsync(AIRequest request) {
+        AIRequest requestWithId = withRequestId(request);
+        if (!isCacheable(requestWithId)) {
+            return delegate.submitAsync(requestWithId);
+        }
+        String key = RequestFingerprint.of(requestWithId, model);
+        String cached = lookup(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(AIResponse.of(cached, requestWithId.id()));
+        }
+        return delegate.submitAsync(requestWithId).thenApply(response -> store(key, response));
+    }
+
+    @Override
+    public CompletableFuture<AIResponse> submitStreaming(AIRequest request, Consumer<String> tokenListener) {
+        AIRequest requestWithId = withRequestId(request);
+        if (!isCacheable(requestWithId)) {
+            return delegate.submitStreaming(requestWithId, tokenListener);
+        }
+        String key = RequestFingerprint.of(requestWithId, model);
+        String cached = lookup(key);
+        if (cached != null) {
+            tokenListener.accept(cached);
+            return CompletableFuture.completedFuture(AIResponse.of(cached, requestWithId.id()));
+        }
+        return delegate.submitStreaming(requestWithId, tokenListener).thenApply(response -> store(key, response));
+    }
+
+    @Override
+    public void shutdown() {
+        flush();
+        delegate.shutdown();
+    }
+
+    /**
+     * Write the current cache contents to the persistence file, if one is configured.
+     */
+    public void flush() {
+        if (persistencePath == null) {
+            return;
+        }
+        List<CacheEntry> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(entries.values());
+        }
+        try {
+            Path tempFile = persistencePath.resolveSibling(persistencePath.getFileName() + ".tmp");
+            Json.MAPPER.writeValue(tempFile.toFile(), snapshot);
+            Files.move(tempFile, persistencePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.atInfo().log("Persisted {} cached responses to {}", snapshot.size(), persistencePath);
+        } catch (IOException e) {
+            LOGGER.atError().setCause(e).log("Failed to persist response cache to {}", persistencePath);
+        }
+    }
+
+    public synchronized CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), entries.size(), bytes);
+    }
+
+    /**
+     * Requests in a session are never cached: their response depends on the conversation so far, which the
+     * backend carries and the fingerprint does not cover, and answering them from the cache would also keep
+     * the conversation from advancing.
+     */
+    private boolean isCacheable(AIRequest request) {
+        return request.sessionId() == null && (!deterministicOnly || request.isDeterministic());
+    }
+
+    private synchronized String lookup(String key) {
+        CacheEntry entry = entries.get(key);
+        if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+            remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.response();
+    }
+
+    private AIResponse store(String key, AIResponse response) {
+        put(new CacheEntry(key, response.response(), System.currentTimeMillis() + ttl.toMillis()));
+        return response;
+    }
+
+    private synchronized void put(CacheEntry entry) {
+        CacheEntry previous = entries.put(entry.key(), entry);
+        if (previous != null) {
+            bytes -= previous.sizeInBytes();
+        }
+        bytes += entry.sizeInBytes();
+
+        Iterator<CacheEntry> eldest = entries.values().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+            bytes -= eldest.next().sizeInBytes();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private void remove(String key) {
+        CacheEntry removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= removed.sizeInBytes();
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(persistencePath)) {
+            return;
+        }
+        try {
+            List<CacheEntry> persisted = Json.MAPPER.readValue(persistencePath.toFile(), new TypeReference<>() {});
+            long now = System.currentTimeMillis();
+            persisted.stream().filter(entry -> !entry.isExpired(now)).forEach(this::put);
+            LOGGER.atInfo().log("Loaded {} cached responses from {}", entries.size(), persistencePath);
+        } catch (IOException e) {
+            LOGGER.atError().setCause(e).log("Ignoring unreadable response cache {}", persistencePath);
+        }
+    }
+
+    private record CacheEntry(String key, String response, long expiresAtMillis) {
+
+        boolean isExpired(long nowMillis) {
+            return nowMillis >= expiresAtMillis;
+        }
+
+        long sizeInBytes() {
+            return ENTRY_OVERHEAD_BYTES + 2L * (key.length() + response.length());
+        }
+    }
+
+    public record CacheStats(long hits, long misses, long evictions, int entries, long bytes) {
+
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0.0 : (double) hits / lookups;
+        }
+    }
+
+    public static class Builder {
+
+        private final AIWorker delegate;
+        private String model = "";
+        private int maxEntries = 10_000;
+        private long maxBytes = 64L * 1024 * 1024;
+        private Duration ttl = Duration.ofDays(1);
+        private Path persistencePath;
+        private boolean deterministicOnly;
+
+        public Builder(AIWorker delegate) {
+            this.delegate = delegate;
+        }
+
+        /**
+         * @param model The model the delegate sends requests to; part of the cache key
+         */
+        public Builder model(String model) {
+            this.model = model;
+            return this;
+        }
+
+        public Builder maxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        public Builder maxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        public Builder ttl(Duration ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        public Builder persistTo(Path persistencePath) {
+            this.persistencePath = persistencePath;
+            return this;
+        }
+
+        /**
+         * @param deterministicOnly Only cache requests with a temperature of 0, whose response would not
+         *                          change if they were sent again
+         */
+        public Builder deterministicOnly(boolean deterministicOnly) {
+            this.deterministicOnly = deterministicOnly;
+            return this;
+        }
+
+        public CachingAIWorker build() {
+            return new CachingAIWorker(this);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package aiforge.ai;
+
+import java.time.Duration;
+
+/**
+ * Stops calls to an endpoint that keeps failing, so that requests fail fast (or go elsewhere) instead of
+ * waiting for timeouts, and the endpoint gets time to recover.
+ * <p>
+ * After {@code failureThreshold} consecutive failures the breaker opens and refuses calls for
+ * {@code openDuration}. It then lets a single trial call through: success closes it again, failure reopens it.
+ * Every permitted call must be reported with {@link #onSuccess()}, {@link #onFailure()} or {@link #release()}.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        /** Calls pass through. */
+        CLOSED,
+        /** Calls are refused. */
+        OPEN,
+        /** A single trial call is allowed to find out whether the endpoint has recovered. */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private boolean trialInFlight;
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold must be at least 1");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+    }
+
+    /**
+     * @return True if a call may be made now
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED -> {
+                return true;
+            }
+            case OPEN -> {
+                if (System.nanoTime() - openedAtNanos < openNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            }
+            default -> {
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+            }
+        }
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAtNanos = System.nanoTime();
+            consecutiveFailures = 0;
+            trialInFlight = false;
+        }
+    }
+
+    /**
+     * Report a call whose outcome says nothing about the endpoint, e.g. because the caller gave up on it.
+     */
+    public synchronized void release() {
+        trialInFlight = false;
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+}
@@ -0,0 +1,11 @@
+package aiforge.ai;
+
+/**
+ * Thrown instead of calling a backend whose {@link CircuitBreaker} is open.
+ */
+public class CircuitOpenException extends AIWorkerException {
+
+    public CircuitOpenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,93 @@
+package aiforge.ai;
+
+import java.time.Duration;
+
+/**
+ * Caps the number of requests in flight on a backend, optionally adapting the cap to how the backend copes.
+ * <p>
+ * Every {@link #acquire()} or successful {@link #tryAcquire()} must be followed by exactly one of
+ * {@link #onSuccess(long)}, {@link #onDropped()} or {@link #release()}. Latency samples are the time a request
+ * took per generated token when the backend reports {@linkplain AIResponse#tokens() token counts}, and per
+ * request otherwise, so that long and short generations can be compared. The time is the backend's own
+ * {@linkplain AIResponse#generationNanos() generation time} where it reports one.
+ */
+public interface ConcurrencyLimiter {
+
+    /**
+     * Wait until fewer than {@link #limit()} requests are in flight and count one more.
+     */
+    void acquire() throws InterruptedException;
+
+    /**
+     * Count one more request in flight if that stays within the limit.
+     *
+     * @return False, without counting the request, if the limit has been reached
+     */
+    boolean tryAcquire();
+
+    /**
+     * A request completed; adjust the limit to its latency and stop counting it.
+     */
+    void onSuccess(long latencyNanos);
+
+    /**
+     * A request failed or timed out, which is taken as a sign of overload; stop counting it.
+     */
+    void onDropped();
+
+    /**
+     * Stop counting a request without learning anything from it, e.g. because it never reached the backend.
+     */
+    void release();
+
+    /**
+     * @return The current number of requests allowed in flight
+     */
+    int limit();
+
+    /**
+     * @return The highest limit this limiter will ever allow
+     */
+    int maxLimit();
+
+    int inFlight();
+
+    Stats stats();
+
+    /**
+     * @param limit         Current number of requests allowed in flight
+     * @param inFlight      Requests currently in flight
+     * @param successes     Requests that completed
+     * @param drops         Requests that failed or timed out
+     * @param recentLatency Moving average of recent latency samples
+     */
+    record Stats(int limit, int inFlight, long successes, long drops, Duration recentLatency) {
+    }
+
+    /**
+     * A limit that never changes.
+     */
+    static ConcurrencyLimiter fixed(int limit) {
+        return new FixedConcurrencyLimiter(limit);
+    }
+
+    /**
+     * Additive increase, multiplicative decrease: the limit grows by one for every sample within
+     * {@code targetLatency} while the limit is actually being used, and shrinks by 10% for every sample above
+     * it or dropped request.
+     *
+     * @param targetLatency Highest acceptable latency sample, per generated token for backends that report tokens
+     */
+    static ConcurrencyLimiter aimd(int initialLimit, int maxLimit, Duration targetLatency) {
+        return new AimdConcurrencyLimiter(initialLimit, maxLimit, targetLatency.toNanos());
+    }
+
+    /**
+     * Needs no target: compares recent latency with a slowly moving baseline and shrinks the limit in
+     * proportion once latency rises more than 50% above it, and otherwise lets it grow.
+     * Holds latency near the backend's uncontended latency while keeping it busy.
+     */
+    static ConcurrencyLimiter gradient(int initialLimit, int maxLimit) {
+        return new GradientConcurrencyLimiter(initialLimit, maxLimit);
+    }
+}
@@ -0,0 +1,15 @@
+package aiforge.ai;
+
+/**
+ * Thrown when a request's deadline passes before the worker could complete it.
+ */
+public class DeadlineExceededException extends AIWorkerException {
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+
+    public DeadlineExceededException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
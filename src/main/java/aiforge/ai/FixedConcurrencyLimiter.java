@@ -0,0 +1,21 @@
+package aiforge.ai;
+
+/**
+ * Limiter whose limit never changes, equivalent to a semaphore.
+ */
+class FixedConcurrencyLimiter extends AbstractConcurrencyLimiter {
+
+    FixedConcurrencyLimiter(int limit) {
+        super(limit, limit);
+    }
+
+    @Override
+    double onSample(double limit, int inFlight, long latencyNanos) {
+        return limit;
+    }
+
+    @Override
+    double onDrop(double limit) {
+        return limit;
+    }
+}
@@ -0,0 +1,61 @@
+package aiforge.ai;
+
+/**
+ * Limiter that follows the ratio between the backend's uncontended latency and its recent latency, in the
+ * spirit of TCP Vegas: while recent latency stays near the baseline the backend has spare capacity and the
+ * limit grows; once requests start queuing inside the backend, latency rises and the limit shrinks in
+ * proportion.
+ * <p>
+ * The baseline is the lowest recent latency seen. It is only allowed to rise again while the limiter is
+ * lightly loaded, because a baseline measured under load would follow latency up and let the limit drift
+ * ever higher.
+ *
+ * @see ConcurrencyLimiter#gradient(int, int)
+ */
+class GradientConcurrencyLimiter extends AbstractConcurrencyLimiter {
+
+    // Recent latency may exceed the baseline by this factor before the limit shrinks
+    private static final double TOLERANCE = 1.5;
+    // The limit shrinks by at most half per sample
+    private static final double MIN_GRADIENT = 0.5;
+    private static final double RECENT_ALPHA = 0.2;
+    private static final double BASELINE_ALPHA = 0.05;
+    // Weight of each new estimate in the limit, so that single samples do not make it jump
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private double recentLatencyNanos;
+    private double baselineLatencyNanos;
+
+    GradientConcurrencyLimiter(int initialLimit, int maxLimit) {
+        super(initialLimit, maxLimit);
+    }
+
+    @Override
+    double onSample(double limit, int inFlight, long latencyNanos) {
+        boolean lightlyLoaded = inFlight <= Math.max(1, limit / 2);
+        if (baselineLatencyNanos == 0) {
+            recentLatencyNanos = latencyNanos;
+            baselineLatencyNanos = latencyNanos;
+            return limit;
+        }
+        recentLatencyNanos = RECENT_ALPHA * latencyNanos + (1 - RECENT_ALPHA) * recentLatencyNanos;
+        if (lightlyLoaded) {
+            baselineLatencyNanos = BASELINE_ALPHA * latencyNanos + (1 - BASELINE_ALPHA) * baselineLatencyNanos;
+        }
+        baselineLatencyNanos = Math.min(baselineLatencyNanos, recentLatencyNanos);
+
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, TOLERANCE * baselineLatencyNanos / recentLatencyNanos));
+        double estimate = limit * gradient + Math.sqrt(limit);
+        if (inFlight * 2 < limit) {
+            // Callers are not using the limit, so latency says nothing about whether it could be higher
+            estimate = Math.min(estimate, limit);
+        }
+        return (1 - SMOOTHING) * limit + SMOOTHING * estimate;
+    }
+
+    @Override
+    double onDrop(double limit) {
+        return limit * BACKOFF_RATIO;
+    }
+}
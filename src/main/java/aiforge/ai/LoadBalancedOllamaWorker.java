@@ -0,0 +1,287 @@
+package aiforge.ai;
+
+import aiforge.utils.OllamaApiClient;
+import aiforge.utils.OllamaRequest;
+import aiforge.utils.OllamaResponse;
+import aiforge.utils.RequestMapper;
+import aiforge.utils.ResponseMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Worker that spreads requests across several Ollama servers.
+ * <p>
+ * Each request goes to the healthy backend chosen by the {@link RoutingStrategy}. A backend that fails
+ * {@code failureThreshold} requests in a row is ejected from rotation until a periodic health check
+ * succeeds again; the same health check also ejects backends that stop answering. Each backend has its own
+ * {@link ConcurrencyLimiter}, by default a fixed limit of {@code maxConcurrentRequestsPerBackend}, and the worker
+ * admits as many requests as the backends' limits add up to, so capacity grows with every endpoint added.
+ */
+public class LoadBalancedOllamaWorker extends QueueBasedAIWorker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadBalancedOllamaWorker.class);
+
+    private final List<OllamaBackend> backends;
+    private final RoutingStrategy routingStrategy;
+    private final int failureThreshold;
+    private final Duration healthCheckTimeout;
+    private final ScheduledExecutorService healthChecker = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("ollama-health-check").daemon(true).factory());
+    private final ReentrantLock routingLock = new ReentrantLock();
+    private final Condition capacityAvailable = routingLock.newCondition();
+
+    private LoadBalancedOllamaWorker(Builder builder, List<OllamaBackend> backends) {
+        super(new TotalCapacityLimiter(backends), builder.admissionPolicy);
+        this.backends = backends;
+        this.routingStrategy = builder.routingStrategy;
+        this.failureThreshold = builder.failureThreshold;
+        this.healthCheckTimeout = builder.healthCheckTimeout;
+        long intervalMillis = builder.healthCheckInterval.toMillis();
+        healthChecker.scheduleWithFixedDelay(this::checkHealth, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected AIResponse processRequest(AIRequest request) {
+        OllamaRequest ollamaRequest = RequestMapper.mapToOllamaRequest(request);
+        Duration timeout = remainingTime(request);
+        return send(request, backend -> backend.client().sendRequest(ollamaRequest, timeout));
+    }
+
+    @Override
+    protected AIResponse processRequest(AIRequest request, Consumer<String> tokenListener) {
+        OllamaRequest ollamaRequest = RequestMapper.mapToOllamaRequest(request, true);
+        Duration timeout = remainingTime(request);
+        return send(request, backend -> backend.client().sendStreamingRequest(ollamaRequest, timeout, tokenListener));
+    }
+
+    @Override
+    public void shutdown() {
+        healthChecker.shutdownNow();
+        super.shutdown();
+    }
+
+    public List<BackendStats> backendStats() {
+        return backends.stream().map(OllamaBackend::stats).toList();
+    }
+
+    private AIResponse send(AIRequest request, BackendCall call) {
+        OllamaBackend backend = acquireBackend();
+        LOGGER.atInfo().log("Routing request {} to {}", request.id(), backend.client().baseUrl());
+        long start = System.nanoTime();
+        try {
+            OllamaResponse response = call.send(backend);
+            long latency = response.totalDuration() > 0 ? response.totalDuration() : System.nanoTime() - start;
+            backend.onSuccess(latency, response.evalCount());
+            return ResponseMapper.mapToAIRequest(response);
+        } catch (IOException e) {
+            if (!isBackendFault(e)) {
+                backend.release();
+            } else if (backend.onFailure() >= failureThreshold && backend.isHealthy()) {
+                LOGGER.atWarn().log("Ejecting {} after {} consecutive failures", backend.client().baseUrl(), failureThreshold);
+                backend.eject();
+            }
+            throw backendFailure(request, backend.client().baseUrl(), e);
+        } catch (RuntimeException e) {
+            // Raised on this side, e.g. by the token listener
+            backend.release();
+            throw e;
+        } finally {
+            signalCapacity();
+        }
+    }
+
+    /**
+     * Only connection failures, stalled reads and server errors count towards ejecting a backend. A call cut off by
+     * its own deadline or by cancellation, or refused as a bad request, says nothing about the backend's health.
+     */
+    private static boolean isBackendFault(IOException e) {
+        if (e instanceof OllamaApiClient.HttpStatusException httpError) {
+            return httpError.statusCode() >= 500;
+        }
+        return !(e instanceof InterruptedIOException) || e instanceof SocketTimeoutException;
+    }
+
+    /**
+     * Pick a backend for the next request and count the request against it. Waits while every healthy backend
+     * is at its concurrency limit (some slots of the worker may belong to ejected backends). If no backend is
+     * healthy at all, the best ejected one with room is used so that requests fail fast instead of waiting forever.
+     */
+    private OllamaBackend acquireBackend() {
+        Comparator<OllamaBackend> order = switch (routingStrategy) {
+            case LEAST_OUTSTANDING -> Comparator.comparingInt(OllamaBackend::outstanding);
+            case LATENCY_WEIGHTED -> Comparator.comparingDouble(OllamaBackend::expectedLatency);
+        };
+        routingLock.lock();
+        try {
+            while (true) {
+                List<OllamaBackend> healthy = backends.stream().filter(OllamaBackend::isHealthy).toList();
+                List<OllamaBackend> candidates = (healthy.isEmpty() ? backends : healthy).stream().sorted(order).toList();
+                for (OllamaBackend backend : candidates) {
+                    if (backend.tryStart()) {
+                        return backend;
+                    }
+                }
+                capacityAvailable.await(healthCheckTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a backend", e);
+        } finally {
+            routingLock.unlock();
+        }
+    }
+
+    private void signalCapacity() {
+        routingLock.lock();
+        try {
+            capacityAvailable.signalAll();
+        } finally {
+            routingLock.unlock();
+        }
+    }
+
+    private void checkHealth() {
+        for (OllamaBackend backend : backends) {
+            boolean healthy = backend.client().isHealthy(healthCheckTimeout);
+            if (healthy && !backend.isHealthy()) {
+                LOGGER.atInfo().log("Returning {} to rotation", backend.client().baseUrl());
+                backend.markHealthy();
+                signalCapacity();
+            } else if (!healthy && backend.isHealthy()) {
+                LOGGER.atWarn().log("Ejecting {} after a failed health check", backend.client().baseUrl());
+                backend.eject();
+            }
+        }
+    }
+
+    /**
+     * Admits as many requests as the backends' limiters currently allow in total, so that requests beyond that
+     * wait in the priority queue rather than for a backend. Each backend's limiter settles a request before this
+     * one does, so the total is always up to date.
+     */
+    private static class TotalCapacityLimiter extends AbstractConcurrencyLimiter {
+
+        private final List<OllamaBackend> backends;
+
+        TotalCapacityLimiter(List<OllamaBackend> backends) {
+            super(backends.stream().mapToInt(OllamaBackend::limit).sum(),
+                    backends.stream().mapToInt(OllamaBackend::maxLimit).sum());
+            this.backends = backends;
+        }
+
+        @Override
+        double onSample(double limit, int inFlight, long latencyNanos) {
+            return capacity();
+        }
+
+        @Override
+        double onDrop(double limit) {
+            return capacity();
+        }
+
+        private double capacity() {
+            return backends.stream().mapToInt(OllamaBackend::limit).sum();
+        }
+    }
+
+    @FunctionalInterface
+    private interface BackendCall {
+        OllamaResponse send(OllamaBackend backend) throws IOException;
+    }
+
+    public static class Builder {
+
+        private final List<OllamaApiClient> clients = new ArrayList<>();
+        private RoutingStrategy routingStrategy = RoutingStrategy.LEAST_OUTSTANDING;
+        private int maxConcurrentRequestsPerBackend = 1;
+        private Supplier<ConcurrencyLimiter> limiterFactory;
+        private int failureThreshold = 3;
+        private Duration healthCheckInterval = Duration.ofSeconds(10);
+        private Duration healthCheckTimeout = Duration.ofSeconds(2);
+        private AdmissionPolicy admissionPolicy = AdmissionPolicy.unbounded();
+
+        public Builder endpoint(String baseUrl) {
+            return endpoint(new OllamaApiClient.Builder().baseUrl(baseUrl).build());
+        }
+
+        public Builder endpoint(OllamaApiClient client) {
+            clients.add(client);
+            return this;
+        }
+
+        public Builder routingStrategy(RoutingStrategy routingStrategy) {
+            this.routingStrategy = routingStrategy;
+            return this;
+        }
+
+        /**
+         * @param maxConcurrentRequestsPerBackend Requests each server can run in parallel (its OLLAMA_NUM_PARALLEL)
+         */
+        public Builder maxConcurrentRequestsPerBackend(int maxConcurrentRequestsPerBackend) {
+            this.maxConcurrentRequestsPerBackend = maxConcurrentRequestsPerBackend;
+            return this;
+        }
+
+        /**
+         * Adapt each backend's concurrency to its latency instead of using a fixed
+         * {@link #maxConcurrentRequestsPerBackend(int)}, e.g. {@code () -> ConcurrencyLimiter.gradient(1, 8)}.
+         *
+         * @param limiterFactory Called once per backend for its own limiter
+         */
+        public Builder concurrencyLimiter(Supplier<ConcurrencyLimiter> limiterFactory) {
+            this.limiterFactory = limiterFactory;
+            return this;
+        }
+
+        /**
+         * @param failureThreshold Consecutive failed requests after which a backend is ejected
+         */
+        public Builder failureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+            return this;
+        }
+
+        public Builder healthCheckInterval(Duration healthCheckInterval) {
+            this.healthCheckInterval = healthCheckInterval;
+            return this;
+        }
+
+        public Builder healthCheckTimeout(Duration healthCheckTimeout) {
+            this.healthCheckTimeout = healthCheckTimeout;
+            return this;
+        }
+
+        public Builder admissionPolicy(AdmissionPolicy admissionPolicy) {
+            this.admissionPolicy = admissionPolicy;
+            return this;
+        }
+
+        public LoadBalancedOllamaWorker build() {
+            if (clients.isEmpty()) {
+                throw new IllegalStateException("At least one endpoint is required");
+            }
+            Supplier<ConcurrencyLimiter> factory = limiterFactory != null
+                    ? limiterFactory
+                    : () -> ConcurrencyLimiter.fixed(maxConcurrentRequestsPerBackend);
+            List<OllamaBackend> backends = clients.stream()
+                    .map(client -> new OllamaBackend(client, factory.get()))
+                    .toList();
+            return new LoadBalancedOllamaWorker(this, backends);
+        }
+    }
+}
@@ -15,22 +15,135 @@ import org.testcontainers.containers.GenericContainer;
 import org.testcontainers.ollama.OllamaContainer;
 import org.testcontainers.utility.DockerImageName;
 
+import java.io.IOException;
 import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
+/**
+ * Worker that sends requests to a single Ollama server.
+ * <p>
+ * Requests with a {@link AIRequest#sessionId() session id} continue a conversation: the {@code context} tokens
+ * Ollama returns are sent with the next request of the same session and system prompt, so the server can reuse
+ * the evaluated prefix instead of evaluating the system prompt again. Once a session's context grows past
+ * {@code maxSessionContextTokens} it starts afresh, before Ollama would truncate the oldest tokens, which hold
+ * the system prompt.
+ */
 public class LocalOllamaWorker extends QueueBasedAIWorker {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(LocalOllamaWorker.class);
 
+    /**
+     * Half of Ollama's default {@code num_ctx} of 4096 tokens.
+     */
+    public static final int DEFAULT_MAX_SESSION_CONTEXT_TOKENS = 2048;
+
+    private record SessionKey(String sessionId, String system) {
+    }
+
+    private final OllamaApiClient client;
+    private final int maxSessionContextTokens;
+    private final Map<SessionKey, int[]> sessionContexts = new ConcurrentHashMap<>();
+
+    public LocalOllamaWorker() {
+        this(1);
+    }
+
+    public LocalOllamaWorker(int maxConcurrentRequests) {
+        this(OllamaApiClient.create(), maxConcurrentRequests);
+    }
+
+    public LocalOllamaWorker(OllamaApiClient client, int maxConcurrentRequests) {
+        this(client, maxConcurrentRequests, AdmissionPolicy.unbounded());
+    }
+
+    public LocalOllamaWorker(OllamaApiClient client, int maxConcurrentRequests, AdmissionPolicy admissionPolicy) {
+        this(client, maxConcurrentRequests, admissionPolicy, DEFAULT_MAX_SESSION_CONTEXT_TOKENS);
+    }
+
+    /**
+     * @param maxSessionContextTokens Largest context carried over between requests of a session; about half of
+     *                                the model's {@code num_ctx} leaves room for the next prompt and response
+     */
+    public LocalOllamaWorker(OllamaApiClient client, int maxConcurrentRequests, AdmissionPolicy admissionPolicy,
+                             int maxSessionContextTokens) {
+        super(maxConcurrentRequests, admissionPolicy);
+        this.client = client;
+        this.maxSessionContextTokens = maxSessionContextTokens;
+    }
+
+    /**
+     * @param limiter Decides how many requests are sent to the server at once, e.g.
+     *                {@link ConcurrencyLimiter#gradient(int, int)} to find the best parallelism automatically
+     */
+    public LocalOllamaWorker(OllamaApiClient client, ConcurrencyLimiter limiter, AdmissionPolicy admissionPolicy,
+                             int maxSessionContextTokens) {
+        super(limiter, admissionPolicy);
+        this.client = client;
+        this.maxSessionContextTokens = maxSessionContextTokens;
+    }
+
+    /**
+     * Forget the context of a session, so its next request starts a new conversation.
+     */
+    public void endSession(String sessionId) {
+        sessionContexts.keySet().removeIf(key -> key.sessionId().equals(sessionId));
+    }
+
     @Override
     protected AIResponse processRequest(AIRequest request) {
         LOGGER.atInfo().log("Processing request: {}", request.prompt());
-        OllamaRequest ollamaRequest = RequestMapper.mapToOllamaRequest(request);
+        OllamaRequest ollamaRequest = RequestMapper.mapToOllamaRequest(request, false, sessionContext(request));
+        try {
+            OllamaResponse ollamaResponse = client.sendRequest(ollamaRequest, remainingTime(request));
+            updateSession(request, ollamaResponse);
+            return ResponseMapper.mapToAIRequest(ollamaResponse);
+        } catch (IOException e) {
+            throw backendFailure(request, client.baseUrl(), e);
+        }
+    }
+
+    @Override
+    protected AIResponse processRequest(AIRequest request, Consumer<String> tokenListener) {
+        LOGGER.atInfo().log("Processing streaming request: {}", request.prompt());
+        OllamaRequest ollamaRequest = RequestMapper.mapToOllamaRequest(request, true, sessionContext(request));
         try {
-            OllamaResponse ollamaResponse = OllamaApiClient.sendRequest(ollamaRequest);
+            OllamaResponse ollamaResponse = client.sendStreamingRequest(ollamaRequest, remainingTime(request), tokenListener);
+            updateSession(request, ollamaResponse);
             return ResponseMapper.mapToAIRequest(ollamaResponse);
-        } catch (Exception e) {
-            LOGGER.atError().setCause(e).log("Failed to process request: {}", request.prompt());
-            return AIResponse.of("Failed to process request");
+        } catch (IOException e) {
+            throw backendFailure(request, client.baseUrl(), e);
+        }
+    }
+
+    /**
+     * @return The context to continue the request's session from, or null if it starts a new conversation
+     */
+    private int[] sessionContext(AIRequest request) {
+        if (request.sessionId() == null) {
+            return null;
+        }
+        int[] context = sessionContexts.get(new SessionKey(request.sessionId(), request.system()));
+        // Roughly four characters per token
+        if (context != null && context.length + request.prompt().length() / 4 > maxSessionContextTokens) {
+            LOGGER.atDebug().log("Starting session {} afresh after {} context tokens", request.sessionId(), context.length);
+            return null;
+        }
+        return context;
+    }
+
+    private void updateSession(AIRequest request, OllamaResponse response) {
+        LOGGER.atDebug().log("Evaluated {} prompt tokens in {} ms", response.promptEvalCount(),
+                response.promptEvalDuration() / 1_000_000);
+        if (request.sessionId() == null) {
+            return;
+        }
+        SessionKey key = new SessionKey(request.sessionId(), request.system());
+        if (response.context() == null || response.context().length > maxSessionContextTokens) {
+            sessionContexts.remove(key);
+        } else {
+            sessionContexts.put(key, response.context());
         }
     }
 }
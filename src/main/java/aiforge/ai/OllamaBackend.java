@@ -0,0 +1,123 @@
+package aiforge.ai;
+
+import aiforge.utils.OllamaApiClient;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One Ollama endpoint behind a {@link LoadBalancedOllamaWorker}, with the load and health statistics used
+ * to route requests to it.
+ */
+class OllamaBackend {
+
+    // Weight of the newest sample in the moving average of generation time
+    private static final double EWMA_ALPHA = 0.3;
+
+    private final OllamaApiClient client;
+    private final ConcurrencyLimiter limiter;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder tokens = new LongAdder();
+    private volatile boolean healthy = true;
+    private double ewmaLatencyNanos;
+
+    OllamaBackend(OllamaApiClient client, ConcurrencyLimiter limiter) {
+        this.client = client;
+        this.limiter = limiter;
+    }
+
+    OllamaApiClient client() {
+        return client;
+    }
+
+    int outstanding() {
+        return limiter.inFlight();
+    }
+
+    int limit() {
+        return limiter.limit();
+    }
+
+    int maxLimit() {
+        return limiter.maxLimit();
+    }
+
+    boolean isHealthy() {
+        return healthy;
+    }
+
+    void markHealthy() {
+        consecutiveFailures.set(0);
+        healthy = true;
+    }
+
+    void eject() {
+        healthy = false;
+    }
+
+    /**
+     * Count a request against the backend if its concurrency limit allows one more.
+     *
+     * @return False if the backend is at its limit
+     */
+    boolean tryStart() {
+        if (!limiter.tryAcquire()) {
+            return false;
+        }
+        requests.increment();
+        return true;
+    }
+
+    /**
+     * @param latencyNanos    Time the request took
+     * @param generatedTokens Tokens generated for the request, used to compare latencies of long and short responses
+     */
+    void onSuccess(long latencyNanos, int generatedTokens) {
+        limiter.onSuccess(latencyNanos / Math.max(1, generatedTokens));
+        tokens.add(generatedTokens);
+        consecutiveFailures.set(0);
+        synchronized (this) {
+            ewmaLatencyNanos = ewmaLatencyNanos == 0
+                    ? latencyNanos
+                    : EWMA_ALPHA * latencyNanos + (1 - EWMA_ALPHA) * ewmaLatencyNanos;
+        }
+    }
+
+    /**
+     * @return The number of consecutive failures, including this one
+     */
+    int onFailure() {
+        limiter.onDropped();
+        failures.increment();
+        return consecutiveFailures.incrementAndGet();
+    }
+
+    /**
+     * Stop counting a request that ended without saying anything about the backend's health, e.g. because the
+     * caller gave up on it.
+     */
+    void release() {
+        limiter.release();
+    }
+
+    synchronized double ewmaLatencyNanos() {
+        return ewmaLatencyNanos;
+    }
+
+    /**
+     * @return The expected time to complete one more request here; lower is better
+     */
+    double expectedLatency() {
+        // Unmeasured backends score as the cheapest so they get probed early
+        return (ewmaLatencyNanos() + 1) * (outstanding() + 1);
+    }
+
+    BackendStats stats() {
+        return new BackendStats(client.baseUrl(), healthy, outstanding(), limit(), requests.sum(), failures.sum(),
+                tokens.sum(), Duration.ofNanos((long) ewmaLatencyNanos()));
+    }
+
+}
@@ -1,55 +1,471 @@
 package aiforge.ai;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import aiforge.utils.Json;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.Optional;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
-public class OpenAIWorker implements AIWorker {
+/**
+ * Worker for the OpenAI chat completions API or any server compatible with it.
+ * <p>
+ * Requests run on a bounded pool of {@code maxConcurrentRequests} threads with room for
+ * {@code queueCapacity} waiting requests. Once both are full, or after {@link #shutdown()}, further requests
+ * fail straight away with a {@link RejectedExecutionException} rather than blocking the submitting thread.
+ * <p>
+ * A {@linkplain #submitBatch(List) batch} of different requests is sent through the Batch API: the requests are
+ * uploaded as one file, the batch job is polled every {@code batchPollInterval}, and its output is fanned back
+ * out to the request IDs. Batch jobs trade latency for throughput; the provider runs them within its completion
+ * window, typically minutes, at a lower price and outside the rate limits of regular calls, so they suit
+ * background work such as task generation rather than interactive requests. Identical requests within a batch are
+ * collapsed into one entry that asks for one choice ({@code n}) per request, and a batch whose requests are all
+ * identical is sent as a single regular call.
+ */
+public class OpenAIWorker extends AbstractAIWorker implements BatchAIWorker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OpenAIWorker.class);
+
+    public static final String DEFAULT_BASE_URL = "https://api.openai.com/v1";
+    public static final String DEFAULT_MODEL = "gpt-4o-mini";
+
+    private static final MediaType JSON_MEDIA_TYPE = MediaType.get("application/json");
+    private static final MediaType JSONL_MEDIA_TYPE = MediaType.get("application/jsonl");
+    private static final Set<String> BATCH_END_STATES = Set.of("completed", "failed", "expired", "cancelled");
+
+    // Shared by all workers so they reuse one connection pool
+    private static final OkHttpClient SHARED_HTTP_CLIENT = new OkHttpClient.Builder()
+            .connectionPool(new ConnectionPool(32, 5, TimeUnit.MINUTES))
+            .build();
 
-    private static final String OPENAI_API_URL = "https://api.openai.com/v1/chat/completions";
     private final String apiKey;
-    private final ConcurrentHashMap<String, String> responseStorage = new ConcurrentHashMap<>();
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String model;
+    private final HttpUrl baseUrl;
+    private final HttpUrl chatCompletionsUrl;
+    private final Duration batchPollInterval;
+    private final OkHttpClient httpClient;
+    private final ThreadPoolExecutor executor;
 
     public OpenAIWorker(String apiKey) {
-        this.apiKey = apiKey;
+        this(new Builder(apiKey));
+    }
+
+    private OpenAIWorker(Builder builder) {
+        this.apiKey = builder.apiKey;
+        this.model = builder.model;
+        this.baseUrl = HttpUrl.get(builder.baseUrl);
+        this.chatCompletionsUrl = baseUrl.newBuilder().addPathSegments("chat/completions").build();
+        this.batchPollInterval = builder.batchPollInterval;
+        this.httpClient = SHARED_HTTP_CLIENT.newBuilder()
+                .connectTimeout(builder.connectTimeout)
+                .readTimeout(builder.readTimeout)
+                .build();
+        this.executor = new ThreadPoolExecutor(
+                builder.maxConcurrentRequests, builder.maxConcurrentRequests,
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(builder.queueCapacity),
+                workerThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
     }
 
     @Override
-    public String submitRequest(AIRequest request) {
-        String requestId = UUID.randomUUID().toString();
-        AIRequest requestWithId = AIRequest.of(request, requestId);
-        new Thread(() -> {
+    public CompletableFuture<AIResponse> submitAsync(AIRequest request) {
+        AIRequest requestWithId = withRequestId(request);
+        CompletableFuture<AIResponse> future = new CompletableFuture<>();
+        execute(List.of(future), () -> {
             try {
-                String response = callOpenAI(requestWithId);
-                responseStorage.put(requestId, response);
+                String response = callOpenAI(requestWithId, 1).getFirst();
+                future.complete(AIResponse.of(response, requestWithId.id()));
             } catch (IOException e) {
-                responseStorage.put(requestId, "Error: " + e.getMessage());
+                LOGGER.atError().setCause(e).log("Request {} failed", requestWithId.id());
+                future.completeExceptionally(backendFailure(requestWithId, chatCompletionsUrl.toString(), e));
+            } catch (RuntimeException e) {
+                LOGGER.atError().setCause(e).log("Request {} failed", requestWithId.id());
+                future.completeExceptionally(e);
             }
-        }).start();
-        return requestId;
+        });
+        return future;
     }
 
     @Override
-    public Optional<String> getResponse(String requestId) {
-        if (responseStorage.containsKey(requestId)) {
-            return Optional.of(responseStorage.remove(requestId));
+    public List<CompletableFuture<AIResponse>> submitBatch(List<AIRequest> requests) {
+        List<CompletableFuture<AIResponse>> futures = new ArrayList<>(requests.size());
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        List<AIRequest> requestsWithId = new ArrayList<>(requests.size());
+        for (AIRequest request : requests) {
+            AIRequest requestWithId = withRequestId(request);
+            groups.computeIfAbsent(RequestFingerprint.of(requestWithId), fingerprint -> new ArrayList<>())
+                    .add(requestsWithId.size());
+            requestsWithId.add(requestWithId);
+            futures.add(new CompletableFuture<>());
+        }
+        if (groups.size() == 1) {
+            List<Integer> group = groups.values().iterator().next();
+            execute(futures, () -> processGroup(requestsWithId, group, futures));
         } else {
-            return Optional.empty();
+            execute(futures, () -> processBatch(requestsWithId, List.copyOf(groups.values()), futures));
+        }
+        return futures;
+    }
+
+    /**
+     * Run a call on the pool, or fail its futures if the pool is full or shut down.
+     */
+    private void execute(List<CompletableFuture<AIResponse>> futures, Runnable call) {
+        try {
+            executor.execute(call);
+        } catch (RejectedExecutionException e) {
+            RejectedExecutionException failure = new RejectedExecutionException(executor.isShutdown()
+                    ? "Worker has been shut down"
+                    : "Worker is at capacity with " + executor.getQueue().size() + " requests waiting", e);
+            futures.forEach(future -> future.completeExceptionally(failure));
+        }
+    }
+
+    /**
+     * Answer a group of identical requests with one call for as many choices. Servers that ignore {@code n}
+     * return fewer choices; the remaining requests are then sent one by one.
+     */
+    private void processGroup(List<AIRequest> requests, List<Integer> group, List<CompletableFuture<AIResponse>> futures) {
+        int answered = 0;
+        try {
+            List<String> choices = callOpenAI(requests.get(group.getFirst()), group.size());
+            for (; answered < group.size(); answered++) {
+                int index = group.get(answered);
+                String response = answered < choices.size() ? choices.get(answered) : callOpenAI(requests.get(index), 1).getFirst();
+                futures.get(index).complete(AIResponse.of(response, requests.get(index).id()));
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.atError().setCause(e).log("Batch of {} identical requests failed", group.size());
+            for (int i = answered; i < group.size(); i++) {
+                AIRequest request = requests.get(group.get(i));
+                futures.get(group.get(i)).completeExceptionally(e instanceof IOException io
+                        ? backendFailure(request, chatCompletionsUrl.toString(), io)
+                        : e);
+            }
+        }
+    }
+
+    /**
+     * Send one entry per group of identical requests as a batch job and wait for its output. Holds a pool thread
+     * until the job ends, as a single call would, but for the whole batch.
+     */
+    private void processBatch(List<AIRequest> requests, List<List<Integer>> groups, List<CompletableFuture<AIResponse>> futures) {
+        String batchId = null;
+        try {
+            StringBuilder input = new StringBuilder();
+            Map<String, List<Integer>> groupsById = new HashMap<>();
+            for (List<Integer> group : groups) {
+                AIRequest request = requests.get(group.getFirst());
+                groupsById.put(request.id(), group);
+                ObjectNode line = Json.MAPPER.createObjectNode()
+                        .put("custom_id", request.id())
+                        .put("method", "POST")
+                        .put("url", chatCompletionsUrl.encodedPath());
+                line.set("body", toChatCompletionRequest(request, group.size()));
+                input.append(Json.MAPPER.writeValueAsString(line)).append('\n');
+            }
+
+            String fileId = call(new Request.Builder()
+                    .url(baseUrl.newBuilder().addPathSegment("files").build())
+                    .post(new MultipartBody.Builder()
+                            .setType(MultipartBody.FORM)
+                            .addFormDataPart("purpose", "batch")
+                            .addFormDataPart("file", "batch.jsonl", RequestBody.create(input.toString(), JSONL_MEDIA_TYPE))
+                            .build()))
+                    .path("id").asText();
+            ObjectNode create = Json.MAPPER.createObjectNode()
+                    .put("input_file_id", fileId)
+                    .put("endpoint", chatCompletionsUrl.encodedPath())
+                    .put("completion_window", "24h");
+            JsonNode batch = call(new Request.Builder()
+                    .url(baseUrl.newBuilder().addPathSegment("batches").build())
+                    .post(RequestBody.create(Json.MAPPER.writeValueAsBytes(create), JSON_MEDIA_TYPE)));
+            batchId = batch.path("id").asText();
+            LOGGER.atInfo().log("Sent {} requests as batch {}", requests.size(), batchId);
+
+            while (!BATCH_END_STATES.contains(batch.path("status").asText())) {
+                Thread.sleep(batchPollInterval.toMillis());
+                if (!expire(requests, futures)) {
+                    LOGGER.atInfo().log("Cancelling batch {}, nobody is waiting for it any more", batchId);
+                    call(new Request.Builder()
+                            .url(baseUrl.newBuilder().addPathSegments("batches/" + batchId + "/cancel").build())
+                            .post(RequestBody.create(new byte[0], JSON_MEDIA_TYPE)));
+                    return;
+                }
+                batch = call(new Request.Builder().url(baseUrl.newBuilder().addPathSegments("batches/" + batchId).build()));
+            }
+
+            for (String outputField : List.of("output_file_id", "error_file_id")) {
+                JsonNode outputFileId = batch.path(outputField);
+                if (outputFileId.isTextual()) {
+                    completeFromOutput(outputFileId.asText(), groupsById, requests, futures);
+                }
+            }
+            IOException missing = new IOException("Batch " + batchId + " ended as " + batch.path("status").asText()
+                    + " without a result for the request");
+            for (int i = 0; i < futures.size(); i++) {
+                futures.get(i).completeExceptionally(backendFailure(requests.get(i), chatCompletionsUrl.toString(), missing));
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.atError().setCause(e).log("Batch {} of {} requests failed", batchId, requests.size());
+            for (int i = 0; i < futures.size(); i++) {
+                futures.get(i).completeExceptionally(e instanceof IOException io
+                        ? backendFailure(requests.get(i), chatCompletionsUrl.toString(), io)
+                        : e);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.completeExceptionally(new RejectedExecutionException("Worker has been shut down", e)));
+        }
+    }
+
+    /**
+     * Fail the requests of a batch whose deadline has passed.
+     *
+     * @return Whether any request of the batch is still waiting
+     */
+    private static boolean expire(List<AIRequest> requests, List<CompletableFuture<AIResponse>> futures) {
+        boolean waiting = false;
+        for (int i = 0; i < futures.size(); i++) {
+            AIRequest request = requests.get(i);
+            if (request.deadline() != null && !Instant.now().isBefore(request.deadline())) {
+                futures.get(i).completeExceptionally(new DeadlineExceededException(
+                        "Request " + request.id() + " missed its deadline while its batch was running"));
+            }
+            waiting |= !futures.get(i).isDone();
+        }
+        return waiting;
+    }
+
+    /**
+     * Complete the requests answered in an output or error file of a batch.
+     */
+    private void completeFromOutput(String fileId, Map<String, List<Integer>> groupsById, List<AIRequest> requests,
+                                    List<CompletableFuture<AIResponse>> futures) throws IOException {
+        String content;
+        try (Response response = send(new Request.Builder()
+                .url(baseUrl.newBuilder().addPathSegments("files/" + fileId + "/content").build()), null)) {
+            content = response.body().string();
+        }
+        for (String line : content.split("\n")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            JsonNode result = Json.MAPPER.readTree(line);
+            List<Integer> group = groupsById.get(result.path("custom_id").asText());
+            if (group == null) {
+                continue;
+            }
+            JsonNode response = result.path("response");
+            if (response.path("status_code").asInt() != 200) {
+                IOException failure = new IOException("Batch request failed with HTTP error code "
+                        + response.path("status_code").asInt() + ": " + result.path("error"));
+                group.forEach(index -> futures.get(index).completeExceptionally(
+                        backendFailure(requests.get(index), chatCompletionsUrl.toString(), failure)));
+                continue;
+            }
+            List<String> choices = messages(response.path("body"), group.size());
+            for (int i = 0; i < group.size(); i++) {
+                int index = group.get(i);
+                AIRequest request = requests.get(index);
+                // Servers that ignore n return fewer choices; send the remaining requests on their own
+                String message = i < choices.size() ? choices.get(i) : callOpenAI(request, 1).getFirst();
+                futures.get(index).complete(AIResponse.of(message, request.id()));
+            }
         }
     }
 
     @Override
     public void shutdown() {
+        LOGGER.atInfo().log("Shutting down OpenAIWorker...");
+        executor.shutdown();
+    }
+
+    /**
+     * @param choices Number of completions to generate for the request
+     * @return The generated messages, at least one and at most {@code choices}
+     */
+    private List<String> callOpenAI(AIRequest request, int choices) throws IOException {
+        Request.Builder httpRequest = new Request.Builder()
+                .url(chatCompletionsUrl)
+                .post(RequestBody.create(Json.MAPPER.writeValueAsBytes(toChatCompletionRequest(request, choices)), JSON_MEDIA_TYPE));
+        try (Response response = send(httpRequest, remainingTime(request))) {
+            return messages(Json.MAPPER.readTree(response.body().byteStream()), choices);
+        }
+    }
+
+    /**
+     * @return The messages of a chat completion, at least one and at most {@code choices}
+     */
+    private static List<String> messages(JsonNode completion, int choices) throws IOException {
+        List<String> messages = new ArrayList<>(choices);
+        for (JsonNode choice : completion.path("choices")) {
+            JsonNode content = choice.path("message").path("content");
+            if (content.isTextual() && messages.size() < choices) {
+                messages.add(content.asText());
+            }
+        }
+        if (messages.isEmpty()) {
+            throw new IOException("Response did not contain a message: " + completion);
+        }
+        return messages;
+    }
+
+    /**
+     * Make an API call that answers with a JSON object.
+     */
+    private JsonNode call(Request.Builder httpRequest) throws IOException {
+        try (Response response = send(httpRequest, null)) {
+            return Json.MAPPER.readTree(response.body().byteStream());
+        }
+    }
+
+    /**
+     * @param timeout Time limit for the whole call, or null for the client's own timeouts
+     * @return The response, which the caller must close
+     * @throws IOException If the call failed or was answered with an HTTP error
+     */
+    private Response send(Request.Builder httpRequest, Duration timeout) throws IOException {
+        if (apiKey != null && !apiKey.isBlank()) {
+            httpRequest.header("Authorization", "Bearer " + apiKey);
+        }
+        Call call = httpClient.newCall(httpRequest.build());
+        if (timeout != null) {
+            call.timeout().timeout(Math.max(1, timeout.toMillis()), TimeUnit.MILLISECONDS);
+        }
+        Response response = call.execute();
+        if (!response.isSuccessful()) {
+            response.close();
+            throw new IOException("HTTP error code: " + response.code());
+        }
+        return response;
+    }
+
+    private ObjectNode toChatCompletionRequest(AIRequest request, int choices) {
+        ObjectNode body = Json.MAPPER.createObjectNode();
+        body.put("model", model);
+        if (choices > 1) {
+            body.put("n", choices);
+        }
 
+        ArrayNode messages = body.putArray("messages");
+        if (request.system() != null) {
+            messages.addObject().put("role", "system").put("content", request.system());
+        }
+        messages.addObject().put("role", "user").put("content", request.prompt());
+
+        if (request.temperature() != null) {
+            body.put("temperature", request.temperature());
+        }
+
+        if (request.structuredFormat() != null) {
+            ObjectNode jsonSchema = body.putObject("response_format")
+                    .put("type", "json_schema")
+                    .putObject("json_schema");
+            jsonSchema.put("name", "response");
+            jsonSchema.set("schema", request.structuredFormat().schema());
+        }
+        return body;
     }
 
-    private String callOpenAI(AIRequest request) throws IOException {
-        OkHttpClient client = new OkHttpClient();
-        return null;
+    private static ThreadFactory workerThreadFactory() {
+        return Thread.ofPlatform().name("openai-worker-", 0).daemon(true).factory();
+    }
+
+    public static class Builder {
+
+        private final String apiKey;
+        private String baseUrl = DEFAULT_BASE_URL;
+        private String model = DEFAULT_MODEL;
+        private int maxConcurrentRequests = 8;
+        private int queueCapacity = 64;
+        private Duration connectTimeout = Duration.ofSeconds(10);
+        private Duration readTimeout = Duration.ofMinutes(2);
+        private Duration batchPollInterval = Duration.ofSeconds(10);
+
+        public Builder(String apiKey) {
+            this.apiKey = apiKey;
+        }
+
+        /**
+         * @param baseUrl The API root, e.g. {@code https://api.openai.com/v1} or a local stand-in server
+         */
+        public Builder baseUrl(String baseUrl) {
+            this.baseUrl = baseUrl;
+            return this;
+        }
+
+        public Builder model(String model) {
+            this.model = model;
+            return this;
+        }
+
+        public Builder maxConcurrentRequests(int maxConcurrentRequests) {
+            if (maxConcurrentRequests < 1) {
+                throw new IllegalArgumentException("maxConcurrentRequests must be at least 1");
+            }
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            return this;
+        }
+
+        public Builder queueCapacity(int queueCapacity) {
+            if (queueCapacity < 1) {
+                throw new IllegalArgumentException("queueCapacity must be at least 1");
+            }
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        public Builder readTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        /**
+         * @param batchPollInterval How often to check whether a batch job has finished
+         */
+        public Builder batchPollInterval(Duration batchPollInterval) {
+            if (batchPollInterval.isNegative() || batchPollInterval.isZero()) {
+                throw new IllegalArgumentException("batchPollInterval must be positive");
+            }
+            this.batchPollInterval = batchPollInterval;
+            return this;
+        }
+
+        public OpenAIWorker build() {
+            return new OpenAIWorker(this);
+        }
     }
 }
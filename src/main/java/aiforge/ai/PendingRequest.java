@@ -0,0 +1,12 @@
+package aiforge.ai;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * A request waiting in a {@link QueueBasedAIWorker}, together with where its result should go.
+ *
+ * @param tokenListener Listener for streamed output, or null if the caller did not ask for streaming
+ */
+record PendingRequest(AIRequest request, Consumer<String> tokenListener, CompletableFuture<AIResponse> future) {
+}
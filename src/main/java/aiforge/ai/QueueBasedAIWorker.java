@@ -1,73 +1,308 @@
 package aiforge.ai;
 
-import dev.langchain4j.data.message.AiMessage;
-import dev.langchain4j.model.output.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Optional;
-import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
-public abstract class QueueBasedAIWorker implements AIWorker {
+/**
+ * Worker that queues requests and processes up to {@code maxConcurrentRequests} of them at once,
+ * each on its own virtual thread. The default of one in-flight request keeps the original
+ * serialized behaviour; raise it to match the parallelism of the backend (e.g. OLLAMA_NUM_PARALLEL),
+ * or pass an adaptive {@link ConcurrencyLimiter} to have it found from the backend's latency.
+ * <p>
+ * Queued requests are dispatched by {@link AIRequest#priority()}, then earliest {@link AIRequest#deadline()};
+ * requests that miss their deadline while queued fail with a {@link DeadlineExceededException}. The queue is
+ * unbounded unless an {@link AdmissionPolicy} says otherwise.
+ * <p>
+ * Identical requests (same {@link RequestFingerprint}, priority and deadline) submitted while one of them is
+ * still queued or in flight are coalesced: only the first is sent to the backend and every caller receives its
+ * result under their own request ID. Each caller gets its own future, so cancelling one leaves the others
+ * waiting; the request itself is only cancelled once every caller has cancelled. Requests in a session are
+ * never coalesced, since each one must continue the conversation from the one before.
+ */
+public abstract class QueueBasedAIWorker extends AbstractAIWorker {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(QueueBasedAIWorker.class);
 
-    private final BlockingQueue<AIRequest> requestQueue = new LinkedBlockingQueue<>();
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
-    private final Map<String,String> responseMap = new HashMap<>();
+    private final RequestScheduler scheduler;
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor();
+    private final ExecutorService requestExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ConcurrencyLimiter limiter;
+    private final Map<String, Coalesced> inFlightRequests = new ConcurrentHashMap<>();
+    private final LongAdder coalescedRequests = new LongAdder();
 
     public QueueBasedAIWorker() {
-        LOGGER.atInfo().log("Initializing QueueBasedAIWorker...");
-        executor.submit(this::processQueue);
+        this(1);
     }
 
-    @Override
-    public String submitRequest(AIRequest request) {
-        LOGGER.atInfo().log("Submitting request to the queue: {}", request.prompt());
-        String requestId = UUID.randomUUID().toString();
-        AIRequest requestWithId = AIRequest.of(request, requestId);
-        requestQueue.add(requestWithId);
-        return requestId;
+    public QueueBasedAIWorker(int maxConcurrentRequests) {
+        this(maxConcurrentRequests, AdmissionPolicy.unbounded());
+    }
+
+    public QueueBasedAIWorker(int maxConcurrentRequests, AdmissionPolicy admissionPolicy) {
+        this(fixedLimiter(maxConcurrentRequests), admissionPolicy);
+    }
+
+    public QueueBasedAIWorker(ConcurrencyLimiter limiter, AdmissionPolicy admissionPolicy) {
+        LOGGER.atInfo().log("Initializing QueueBasedAIWorker with up to {} concurrent request(s)...", limiter.maxLimit());
+        this.limiter = limiter;
+        this.scheduler = new RequestScheduler(admissionPolicy);
+        dispatcher.submit(this::processQueue);
     }
 
     @Override
-    public void shutdown() {
-        LOGGER.atInfo().log("Shutting down QueueBasedAIWorker...");
-        executor.shutdownNow();
+    public CompletableFuture<AIResponse> submitAsync(AIRequest request) {
+        return enqueue(request, null);
     }
 
     @Override
-    public Optional<String> getResponse(String requestId) {
-        if (responseMap.containsKey(requestId)) {
-            return Optional.of(responseMap.remove(requestId));
-        } else {
-            return Optional.empty();
+    public CompletableFuture<AIResponse> submitStreaming(AIRequest request, Consumer<String> tokenListener) {
+        return enqueue(request, tokenListener);
+    }
+
+    private CompletableFuture<AIResponse> enqueue(AIRequest request, Consumer<String> tokenListener) {
+        if (dispatcher.isShutdown()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Worker has been shut down"));
+        }
+        AIRequest requestWithId = withRequestId(request);
+        if (requestWithId.sessionId() != null) {
+            CompletableFuture<AIResponse> future = new CompletableFuture<>();
+            schedule(new PendingRequest(requestWithId, tokenListener, future));
+            return future;
+        }
+        String key = coalescingKey(requestWithId);
+        Coalesced created = new Coalesced();
+        Coalesced group = inFlightRequests.compute(key, (k, existing) -> {
+            if (existing == null) {
+                return created;
+            }
+            existing.callers++;
+            return existing;
+        });
+        boolean leader = group == created;
+        // The leader's listener receives the streamed tokens; followers get the whole response as one chunk
+        CompletableFuture<AIResponse> caller = group.attach(requestWithId.id(), leader ? null : tokenListener);
+        caller.whenComplete((response, error) -> {
+            if (caller.isCancelled()) {
+                leave(key, group);
+            }
+        });
+        if (!leader) {
+            LOGGER.atInfo().log("Coalescing request {} with an identical in-flight request", requestWithId.id());
+            coalescedRequests.increment();
+            return caller;
+        }
+        group.shared.whenComplete((response, error) -> inFlightRequests.remove(key, group));
+
+        schedule(new PendingRequest(requestWithId, tokenListener, group.shared));
+        return caller;
+    }
+
+    private void schedule(PendingRequest pending) {
+        LOGGER.atInfo().log("Submitting request to the queue: {}", pending.request().prompt());
+        try {
+            scheduler.add(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.future().completeExceptionally(new RejectedExecutionException("Interrupted while waiting for queue space", e));
         }
     }
 
     /**
-     * Process the request queue, calling the abstract `processRequest` method for each request.
+     * A caller cancelled its future; cancel the request too if nobody else is waiting for it.
+     */
+    private void leave(String key, Coalesced group) {
+        // Computing on the key serializes this with callers joining the group
+        inFlightRequests.compute(key, (k, existing) -> {
+            if (--group.callers > 0) {
+                return existing;
+            }
+            group.shared.cancel(false);
+            return existing == group ? null : existing;
+        });
+    }
+
+    /**
+     * Requests may only share a backend call if they would also be scheduled and expire alike.
+     */
+    private static String coalescingKey(AIRequest request) {
+        return RequestFingerprint.of(request) + '/' + request.priority() + '/' + request.deadline();
+    }
+
+    /**
+     * @return Queue depth and wait-time statistics of the request queue
+     */
+    public SchedulerMetrics schedulerMetrics() {
+        return scheduler.metrics();
+    }
+
+    /**
+     * @return The current concurrency limit and the latency it was derived from
+     */
+    public ConcurrencyLimiter.Stats limiterStats() {
+        return limiter.stats();
+    }
+
+    /**
+     * @return The number of requests that were answered by an identical in-flight request instead of
+     * being sent to the backend
+     */
+    public long coalescedRequestCount() {
+        return coalescedRequests.sum();
+    }
+
+    @Override
+    public void shutdown() {
+        LOGGER.atInfo().log("Shutting down QueueBasedAIWorker...");
+        dispatcher.shutdownNow();
+        requestExecutor.shutdownNow();
+
+        // Nobody is left to process queued requests, so release anyone waiting on them
+        scheduler.drain().forEach(pending -> pending.future().cancel(false));
+    }
+
+    /**
+     * Dispatch queued requests, handing each one to a virtual thread as soon as a slot is free.
+     * A slot is claimed before taking from the queue so that requests stay queued (and visible to
+     * the queue's ordering) until they can actually be processed.
      */
     private void processQueue() {
         try {
             while (true) {
-                LOGGER.atInfo().log("Waiting to take a request from the queue...");
-                AIRequest request = requestQueue.take();
-                LOGGER.atInfo().log("Processing request: {}", request.prompt());
-                AIResponse response = processRequest(request);
-                responseMap.put(request.id(), response.response());
+                limiter.acquire();
+                PendingRequest pending;
+                try {
+                    LOGGER.atInfo().log("Waiting to take a request from the queue...");
+                    pending = scheduler.take();
+                } catch (InterruptedException e) {
+                    limiter.release();
+                    throw e;
+                }
+                try {
+                    requestExecutor.execute(() -> process(pending));
+                } catch (RejectedExecutionException e) {
+                    // Already taken from the queue, so shutdown's drain cannot release it
+                    limiter.release();
+                    pending.future().completeExceptionally(e);
+                    throw e;
+                }
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             LOGGER.atInfo().log("Worker interrupted, shutting down.");
+        } catch (RejectedExecutionException e) {
+            LOGGER.atInfo().log("Worker shut down while dispatching.");
+        }
+    }
+
+    /**
+     * Call the abstract `processRequest` method for a single request, complete its future and report the
+     * outcome to the limiter.
+     */
+    private void process(PendingRequest pending) {
+        AIRequest request = pending.request();
+        LOGGER.atInfo().log("Processing request: {}", request.prompt());
+        long start = System.nanoTime();
+        try {
+            AIResponse response = pending.tokenListener() == null
+                    ? processRequest(request)
+                    : processRequest(request, pending.tokenListener());
+            limiter.onSuccess(latencySample(response, System.nanoTime() - start));
+            pending.future().complete(response.withId(request.id()));
+        } catch (Exception e) {
+            if (isOverload(e)) {
+                limiter.onDropped();
+            } else {
+                limiter.release();
+            }
+            LOGGER.atError().setCause(e).log("Request {} failed", request.id());
+            pending.future().completeExceptionally(e);
+        } catch (Error e) {
+            limiter.release();
+            pending.future().completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * The latency the limiter learns from, per generated token. The backend's own timings are preferred: the time
+     * measured here also includes waiting for a free slot on the server, which rises with load whether or not the
+     * backend itself slows down.
+     */
+    private static long latencySample(AIResponse response, long elapsedNanos) {
+        int tokens = Math.max(1, response.tokens());
+        if (response.generationNanos() > 0) {
+            return response.generationNanos() / tokens;
+        }
+        if (response.totalNanos() > 0) {
+            return response.totalNanos() / tokens;
         }
+        return elapsedNanos / tokens;
     }
 
+    /**
+     * Only failures of the backend itself tell the limiter anything about its load. A deadline error without a
+     * cause was raised by {@link #remainingTime(AIRequest)} before the request was sent, and other errors, such
+     * as a response that could not be decoded, come from this side.
+     */
+    private static boolean isOverload(Exception e) {
+        return e instanceof BackendException || e instanceof DeadlineExceededException && e.getCause() != null;
+    }
+
+    /**
+     * Identical requests sharing one backend call. Only modified while computing on its key.
+     */
+    private static final class Coalesced {
+
+        private final CompletableFuture<AIResponse> shared = new CompletableFuture<>();
+        private int callers = 1;
+
+        /**
+         * @return A future of the shared result under the caller's own request ID
+         */
+        private CompletableFuture<AIResponse> attach(String requestId, Consumer<String> tokenListener) {
+            CompletableFuture<AIResponse> caller = new CompletableFuture<>();
+            shared.whenComplete((response, error) -> {
+                if (error != null) {
+                    caller.completeExceptionally(unwrap(error));
+                    return;
+                }
+                if (tokenListener != null) {
+                    tokenListener.accept(response.response());
+                }
+                caller.complete(response.withId(requestId));
+            });
+            return caller;
+        }
+    }
+
+    private static ConcurrencyLimiter fixedLimiter(int maxConcurrentRequests) {
+        if (maxConcurrentRequests < 1) {
+            throw new IllegalArgumentException("maxConcurrentRequests must be at least 1");
+        }
+        return ConcurrencyLimiter.fixed(maxConcurrentRequests);
+    }
+
+    /**
+     * Process a single request. May be called concurrently from several threads.
+     */
     protected abstract AIResponse processRequest(AIRequest request);
-}
\ No newline at end of file
+
+    /**
+     * Process a single request, reporting generated text to the listener as it arrives.
+     * The default implementation does not stream and reports the complete response as one chunk.
+     */
+    protected AIResponse processRequest(AIRequest request, Consumer<String> tokenListener) {
+        AIResponse response = processRequest(request);
+        tokenListener.accept(response.response());
+        return response;
+    }
+}
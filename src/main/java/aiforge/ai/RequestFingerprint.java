@@ -0,0 +1,53 @@
+package aiforge.ai;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Content hash of an {@link AIRequest}, ignoring its ID. Two requests with the same fingerprint ask the
+ * backend for exactly the same thing. Line endings and surrounding whitespace are normalized first so
+ * that cosmetic differences do not produce distinct fingerprints.
+ */
+public final class RequestFingerprint {
+
+    private static final char SEPARATOR = '\u0000';
+
+    private RequestFingerprint() {
+    }
+
+    public static String of(AIRequest request) {
+        return of(request, "");
+    }
+
+    /**
+     * @param model The model the request will be sent to, since the same request yields different results
+     *              on different models
+     */
+    public static String of(AIRequest request, String model) {
+        StringBuilder canonical = new StringBuilder()
+                .append(model).append(SEPARATOR)
+                .append(normalize(request.system())).append(SEPARATOR)
+                .append(normalize(request.prompt())).append(SEPARATOR)
+                .append(request.temperature()).append(SEPARATOR)
+                .append(request.sessionId()).append(SEPARATOR);
+        if (request.structuredFormat() != null) {
+            canonical.append(request.structuredFormat().schemaJson());
+        }
+        return sha256(canonical.toString());
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.replace("\r\n", "\n").strip();
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package aiforge.ai;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded queue of pending requests ordered by priority, then earliest deadline, then arrival.
+ * What happens when the queue is full is decided by its {@link AdmissionPolicy}.
+ * <p>
+ * Requests whose deadline passes while they are still queued are removed and failed with a
+ * {@link DeadlineExceededException} so that no backend time is spent on them.
+ */
+class RequestScheduler {
+
+    private static final Comparator<Entry> ORDER = Comparator
+            .comparing((Entry entry) -> entry.pending().request().priority()).reversed()
+            .thenComparing(entry -> entry.pending().request().deadline(), Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparingLong(Entry::sequence);
+
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>(ORDER);
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final AdmissionPolicy admissionPolicy;
+
+    private long nextSequence;
+    private long dispatched;
+    private long expired;
+    private long rejected;
+    private long shed;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+
+    RequestScheduler(AdmissionPolicy admissionPolicy) {
+        this.admissionPolicy = admissionPolicy;
+    }
+
+    /**
+     * Queue a request, applying the admission policy if the queue is full. A request that is not admitted
+     * has its future failed with a {@link RejectedExecutionException}.
+     */
+    void add(PendingRequest pending) throws InterruptedException {
+        Entry entry;
+        lock.lockInterruptibly();
+        try {
+            if (!makeRoom()) {
+                rejected++;
+                pending.future().completeExceptionally(new RejectedExecutionException(
+                        "Request queue is full (" + admissionPolicy.capacity() + " requests)"));
+                return;
+            }
+            entry = new Entry(pending, nextSequence++, System.nanoTime());
+            queue.add(entry);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        Instant deadline = pending.request().deadline();
+        if (deadline != null) {
+            long delayNanos = Math.max(0, Duration.between(Instant.now(), deadline).toNanos());
+            CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS).execute(() -> expire(entry));
+        }
+    }
+
+    /**
+     * Take the most urgent request, waiting until one is available. Requests that were already completed
+     * elsewhere (e.g. cancelled by their caller) or whose deadline has passed are skipped.
+     */
+    PendingRequest take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                while (queue.isEmpty()) {
+                    notEmpty.await();
+                }
+                Entry entry = queue.poll();
+                notFull.signal();
+                if (entry.pending().future().isDone()) {
+                    continue;
+                }
+                if (isPastDeadline(entry)) {
+                    fail(entry);
+                    continue;
+                }
+                long waitNanos = System.nanoTime() - entry.enqueuedAtNanos();
+                dispatched++;
+                totalWaitNanos += waitNanos;
+                maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+                return entry.pending();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove and return every queued request.
+     */
+    List<PendingRequest> drain() {
+        lock.lock();
+        try {
+            List<PendingRequest> drained = new ArrayList<>(queue.size());
+            queue.forEach(entry -> drained.add(entry.pending()));
+            queue.clear();
+            notFull.signalAll();
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    SchedulerMetrics metrics() {
+        lock.lock();
+        try {
+            Duration averageWait = Duration.ofNanos(dispatched == 0 ? 0 : totalWaitNanos / dispatched);
+            return new SchedulerMetrics(queue.size(), dispatched, expired, rejected, shed,
+                    averageWait, Duration.ofNanos(maxWaitNanos));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void expire(Entry entry) {
+        lock.lock();
+        try {
+            if (!queue.remove(entry)) {
+                return; // Already dispatched or drained
+            }
+            notFull.signal();
+            fail(entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ensure there is room for one more request. Must be called with the lock held.
+     *
+     * @return False if the request should be rejected
+     */
+    private boolean makeRoom() throws InterruptedException {
+        if (queue.size() < admissionPolicy.capacity()) {
+            return true;
+        }
+        switch (admissionPolicy.mode()) {
+            case BLOCK -> {
+                long remainingNanos = admissionPolicy.timeout().toNanos();
+                while (queue.size() >= admissionPolicy.capacity()) {
+                    if (remainingNanos <= 0) {
+                        return false;
+                    }
+                    remainingNanos = notFull.awaitNanos(remainingNanos);
+                }
+                return true;
+            }
+            case SHED_OLDEST -> {
+                Entry oldest = queue.stream().min(Comparator.comparingLong(Entry::sequence)).orElseThrow();
+                queue.remove(oldest);
+                shed++;
+                oldest.pending().future().completeExceptionally(new RejectedExecutionException(
+                        "Request " + oldest.pending().request().id() + " was shed to admit newer requests"));
+                return true;
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+
+    private void fail(Entry entry) {
+        expired++;
+        entry.pending().future().completeExceptionally(new DeadlineExceededException(
+                "Request " + entry.pending().request().id() + " missed its deadline while queued"));
+    }
+
+    private static boolean isPastDeadline(Entry entry) {
+        Instant deadline = entry.pending().request().deadline();
+        return deadline != null && !Instant.now().isBefore(deadline);
+    }
+
+    private record Entry(PendingRequest pending, long sequence, long enqueuedAtNanos) {
+    }
+}
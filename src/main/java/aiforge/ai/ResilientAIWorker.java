@@ -0,0 +1,485 @@
+package aiforge.ai;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Decorator that keeps tail latency and failure rates down for one or more equivalent endpoints.
+ * <ul>
+ *     <li>Every request gets a deadline (the request's own, or {@code timeout} from now) and fails with a
+ *     {@link DeadlineExceededException} once it passes, whatever the endpoint is doing.</li>
+ *     <li>Requests that fail with a transient error are retried up to {@code maxAttempts} times in total, after
+ *     an exponential backoff with full jitter so that callers failing together do not retry together.</li>
+ *     <li>With hedging enabled, a request that has not been answered after the {@code hedgePercentile} latency of
+ *     recent requests is sent a second time and the first answer wins. A hedge costs one extra call for the
+ *     slowest few percent of requests and cuts off their tail.</li>
+ *     <li>Each endpoint has a {@link CircuitBreaker}; while it is open the endpoint is skipped, or the attempt
+ *     fails with a {@link CircuitOpenException} if no endpoint is available.</li>
+ * </ul>
+ * Retries and hedges go to the next endpoint whose breaker is closed, so with several endpoints they also
+ * route around a failing one. Hedges should target an endpoint other than the original call's: workers that
+ * coalesce identical requests, such as {@link QueueBasedAIWorker}, answer a hedge sent to the same worker from the
+ * original call. Streaming requests are only retried while no token has been delivered and are never hedged.
+ * <p>
+ * Requests in a {@linkplain AIRequest#sessionId() session} are never hedged, and every attempt goes to the same
+ * endpoint, picked from the session id: the endpoint keeps the session's context, and a second call that runs to
+ * completion would add its own turn to it even after losing. If that endpoint's breaker is open the attempt
+ * fails with a {@link CircuitOpenException}.
+ * <p>
+ * Once a request has its result, whether an answer, an error or a cancellation by the caller, its calls still
+ * running (the losing hedge among them) are cancelled. {@link #shutdown()} fails every request still under way.
+ */
+public class ResilientAIWorker extends AbstractAIWorker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResilientAIWorker.class);
+
+    // Hedging waits for this many latency samples so that the percentile means something
+    private static final int MIN_HEDGE_SAMPLES = 20;
+    private static final int LATENCY_WINDOW = 256;
+
+    private final List<Endpoint> endpoints;
+    private final Duration timeout;
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final double hedgePercentile;
+    private final LatencyWindow latencies = new LatencyWindow(LATENCY_WINDOW);
+    private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1,
+            Thread.ofPlatform().name("resilience-timer").daemon(true).factory());
+    private final Set<Execution> executions = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder deadlinesExceeded = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    private ResilientAIWorker(Builder builder) {
+        this.endpoints = builder.workers.stream()
+                .map(worker -> new Endpoint(worker, new CircuitBreaker(builder.failureThreshold, builder.openDuration)))
+                .toList();
+        this.timeout = builder.timeout;
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoffNanos = builder.initialBackoff.toNanos();
+        this.maxBackoffNanos = builder.maxBackoff.toNanos();
+        this.hedgePercentile = builder.hedgePercentile;
+        // Most deadline timers are cancelled long before they fire; do not keep them queued until then
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    @Override
+    public CompletableFuture<AIResponse> submitAsync(AIRequest request) {
+        return execute(request, null);
+    }
+
+    @Override
+    public CompletableFuture<AIResponse> submitStreaming(AIRequest request, Consumer<String> tokenListener) {
+        return execute(request, tokenListener);
+    }
+
+    @Override
+    public void shutdown() {
+        LOGGER.atInfo().log("Shutting down ResilientAIWorker...");
+        timer.shutdownNow();
+        // Their pending retries, hedges and deadlines were just discarded, so nothing else would complete them
+        executions.forEach(Execution::reject);
+        endpoints.forEach(endpoint -> endpoint.worker().shutdown());
+    }
+
+    public Stats stats() {
+        return new Stats(requests.sum(), retries.sum(), hedges.sum(), hedgeWins.sum(), deadlinesExceeded.sum(),
+                failures.sum(), Duration.ofNanos(latencies.percentile(hedgePercentile > 0 ? hedgePercentile : 0.95)),
+                endpoints.stream().map(endpoint -> endpoint.breaker().state()).toList());
+    }
+
+    private CompletableFuture<AIResponse> execute(AIRequest request, Consumer<String> tokenListener) {
+        if (timer.isShutdown()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Worker has been shut down"));
+        }
+        AIRequest requestWithId = withRequestId(request);
+        if (requestWithId.deadline() == null && timeout != null) {
+            requestWithId = requestWithId.withTimeout(timeout);
+        }
+        requests.increment();
+        Execution execution = new Execution(requestWithId, tokenListener);
+        executions.add(execution);
+        execution.result.whenComplete((response, error) -> executions.remove(execution));
+        // Checked again after registering, so that either this or shutdown() fails the request
+        if (timer.isShutdown()) {
+            execution.reject();
+        } else {
+            execution.start();
+        }
+        return execution.result;
+    }
+
+    /**
+     * @return Whether a failure might go away when the request is tried again
+     */
+    private static boolean isRetryable(Throwable error) {
+        return error instanceof BackendException
+                || error instanceof CircuitOpenException
+                || error instanceof IOException
+                || error instanceof UncheckedIOException;
+    }
+
+    /**
+     * Exponential backoff with full jitter: a random delay up to {@code initialBackoff * 2^(attempt - 1)}.
+     */
+    private long backoffNanos(int attempt) {
+        long ceiling = initialBackoffNanos << Math.min(attempt - 1, 30);
+        if (ceiling <= 0 || ceiling > maxBackoffNanos) {
+            ceiling = maxBackoffNanos;
+        }
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Pick the first endpoint at or after {@code offset} (wrapping around) whose circuit breaker admits a call.
+     *
+     * @return The endpoint, or null if every breaker is open
+     */
+    private Endpoint acquireEndpoint(int offset) {
+        for (int i = 0; i < endpoints.size(); i++) {
+            Endpoint endpoint = endpoints.get((offset + i) % endpoints.size());
+            if (endpoint.breaker().tryAcquire()) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The endpoint that holds the session's context, or null if its breaker is open
+     */
+    private Endpoint acquireSessionEndpoint(String sessionId) {
+        Endpoint endpoint = endpoints.get(Math.floorMod(sessionId.hashCode(), endpoints.size()));
+        return endpoint.breaker().tryAcquire() ? endpoint : null;
+    }
+
+    /**
+     * One request on its way through attempts, hedges and backoffs. The attempt number identifies the calls
+     * that belong to the current attempt, so late outcomes of an earlier attempt are ignored.
+     */
+    private final class Execution {
+
+        private final AIRequest request;
+        private final Consumer<String> tokenListener;
+        private final AtomicBoolean streamed = new AtomicBoolean();
+        private final CompletableFuture<AIResponse> result = new CompletableFuture<>();
+        private final List<CompletableFuture<AIResponse>> calls = new ArrayList<>();
+
+        private int attempt;
+        private int outstanding;
+        private volatile boolean expired;
+
+        Execution(AIRequest request, Consumer<String> tokenListener) {
+            this.request = request;
+            this.tokenListener = tokenListener;
+        }
+
+        void start() {
+            result.whenComplete((response, error) -> cancelCalls());
+            if (request.deadline() != null) {
+                long delayNanos = Duration.between(Instant.now(), request.deadline()).toNanos();
+                ScheduledFuture<?> expiry = schedule(this::expire, Math.max(0, delayNanos));
+                if (expiry != null) {
+                    result.whenComplete((response, error) -> expiry.cancel(false));
+                }
+            }
+            runAttempt();
+        }
+
+        void reject() {
+            result.completeExceptionally(new RejectedExecutionException("Worker has been shut down"));
+        }
+
+        /**
+         * @return The scheduled task, or null if the worker has been shut down, in which case the request fails
+         */
+        private ScheduledFuture<?> schedule(Runnable task, long delayNanos) {
+            try {
+                return timer.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                reject();
+                return null;
+            }
+        }
+
+        private void cancelCalls() {
+            List<CompletableFuture<AIResponse>> running;
+            synchronized (this) {
+                running = List.copyOf(calls);
+            }
+            running.forEach(call -> call.cancel(false));
+        }
+
+        private void runAttempt() {
+            if (result.isDone()) {
+                return;
+            }
+            int attemptNumber;
+            synchronized (this) {
+                attemptNumber = ++attempt;
+                outstanding = 1;
+            }
+            boolean inSession = request.sessionId() != null;
+            Endpoint endpoint = inSession ? acquireSessionEndpoint(request.sessionId()) : acquireEndpoint(attemptNumber - 1);
+            if (endpoint == null) {
+                onCallFailed(attemptNumber, new CircuitOpenException(inSession
+                        ? "The endpoint of session " + request.sessionId() + " is unavailable"
+                        : "All endpoints are unavailable"));
+                return;
+            }
+            send(endpoint, attemptNumber, false);
+
+            long hedgeDelay = hedgePercentile > 0 && tokenListener == null && !inSession && latencies.size() >= MIN_HEDGE_SAMPLES
+                    ? latencies.percentile(hedgePercentile)
+                    : -1;
+            if (hedgeDelay >= 0) {
+                schedule(() -> hedge(attemptNumber), hedgeDelay);
+            }
+        }
+
+        private void hedge(int attemptNumber) {
+            synchronized (this) {
+                if (result.isDone() || attempt != attemptNumber || outstanding == 0) {
+                    return;
+                }
+                outstanding++;
+            }
+            Endpoint endpoint = acquireEndpoint(attemptNumber);
+            if (endpoint == null) {
+                onCallFailed(attemptNumber, new CircuitOpenException("No endpoint available for a hedged request"));
+                return;
+            }
+            LOGGER.atDebug().log("Hedging request {} after attempt {} ran past the p{} latency", request.id(),
+                    attemptNumber, (int) (hedgePercentile * 100));
+            hedges.increment();
+            send(endpoint, attemptNumber, true);
+        }
+
+        private void send(Endpoint endpoint, int attemptNumber, boolean hedged) {
+            long start = System.nanoTime();
+            CompletableFuture<AIResponse> call = tokenListener == null
+                    ? endpoint.worker().submitAsync(request)
+                    : endpoint.worker().submitStreaming(request, token -> {
+                        streamed.set(true);
+                        tokenListener.accept(token);
+                    });
+            boolean abandoned;
+            synchronized (this) {
+                calls.add(call);
+                abandoned = result.isDone();
+            }
+            if (abandoned) {
+                call.cancel(false);
+            }
+            call.whenComplete((response, error) -> {
+                if (error == null) {
+                    endpoint.breaker().onSuccess();
+                    latencies.record(System.nanoTime() - start);
+                    if (result.complete(response.withId(request.id())) && hedged) {
+                        hedgeWins.increment();
+                    }
+                    return;
+                }
+                Throwable cause = unwrap(error);
+                // A call cut off by the deadline counts against the endpoint, or one that hangs would never trip
+                if (cause instanceof CancellationException && !expired) {
+                    endpoint.breaker().release();
+                } else {
+                    endpoint.breaker().onFailure();
+                }
+                onCallFailed(attemptNumber, cause);
+            });
+        }
+
+        /**
+         * Retry once every call of the attempt has failed, unless the error is permanent, attempts are used up or
+         * the backoff would run past the deadline.
+         */
+        private void onCallFailed(int attemptNumber, Throwable error) {
+            synchronized (this) {
+                if (attempt != attemptNumber || --outstanding > 0) {
+                    return;
+                }
+            }
+            if (result.isDone()) {
+                return;
+            }
+            long backoff = backoffNanos(attemptNumber);
+            boolean retry = isRetryable(error)
+                    && attemptNumber < maxAttempts
+                    && !streamed.get()
+                    && (request.deadline() == null
+                    || Instant.now().plusNanos(backoff).isBefore(request.deadline()));
+            if (!retry) {
+                LOGGER.atWarn().log("Request {} failed after {} attempt(s): {}", request.id(), attemptNumber, error.getMessage());
+                if (result.completeExceptionally(error)) {
+                    failures.increment();
+                }
+                return;
+            }
+            LOGGER.atDebug().log("Retrying request {} in {} ms after: {}", request.id(), backoff / 1_000_000, error.getMessage());
+            retries.increment();
+            schedule(this::runAttempt, backoff);
+        }
+
+        private void expire() {
+            // Set first, so that the calls completing the result cancels are taken as failures
+            expired = true;
+            if (result.completeExceptionally(new DeadlineExceededException("Request " + request.id() + " missed its deadline"))) {
+                deadlinesExceeded.increment();
+            } else {
+                expired = false;
+            }
+        }
+    }
+
+    private record Endpoint(AIWorker worker, CircuitBreaker breaker) {
+    }
+
+    /**
+     * The latencies of the most recent successful calls, for estimating percentiles.
+     */
+    private static final class LatencyWindow {
+
+        private final long[] samples;
+        private int next;
+        private int size;
+
+        LatencyWindow(int capacity) {
+            this.samples = new long[capacity];
+        }
+
+        synchronized void record(long latencyNanos) {
+            samples[next] = latencyNanos;
+            next = (next + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long percentile(double percentile) {
+            if (size == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            return sorted[Math.min(size - 1, (int) Math.ceil(percentile * size) - 1)];
+        }
+    }
+
+    /**
+     * @param requests          Requests submitted
+     * @param retries           Attempts made after a failed one
+     * @param hedges            Duplicate calls sent because the first was slow
+     * @param hedgeWins         Requests answered by their hedge rather than the original call
+     * @param deadlinesExceeded Requests failed because their deadline passed
+     * @param failures          Requests failed for any other reason, after all attempts
+     * @param tailLatency       Latency of recent calls at the hedge percentile (p95 without hedging)
+     * @param circuitStates     State of each endpoint's circuit breaker, in the order they were added
+     */
+    public record Stats(long requests, long retries, long hedges, long hedgeWins, long deadlinesExceeded,
+                        long failures, Duration tailLatency, List<CircuitBreaker.State> circuitStates) {
+    }
+
+    public static class Builder {
+
+        private final List<AIWorker> workers = new ArrayList<>();
+        private Duration timeout;
+        private int maxAttempts = 3;
+        private Duration initialBackoff = Duration.ofMillis(200);
+        private Duration maxBackoff = Duration.ofSeconds(5);
+        private double hedgePercentile;
+        private int failureThreshold = 5;
+        private Duration openDuration = Duration.ofSeconds(30);
+
+        public Builder(AIWorker delegate) {
+            workers.add(delegate);
+        }
+
+        /**
+         * Add an equivalent endpoint that retries and hedges may go to.
+         */
+        public Builder endpoint(AIWorker worker) {
+            workers.add(worker);
+            return this;
+        }
+
+        /**
+         * @param timeout Deadline for requests that do not carry their own
+         */
+        public Builder timeout(Duration timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        /**
+         * @param maxAttempts Calls per request including the first; 1 disables retries
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("maxAttempts must be at least 1");
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public Builder backoff(Duration initialBackoff, Duration maxBackoff) {
+            this.initialBackoff = initialBackoff;
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+
+        /**
+         * @param hedgePercentile Latency percentile of recent requests after which a slow request is sent again,
+         *                        e.g. 0.95; hedging is off unless set
+         */
+        public Builder hedgeAfterPercentile(double hedgePercentile) {
+            if (hedgePercentile <= 0 || hedgePercentile >= 1) {
+                throw new IllegalArgumentException("hedgePercentile must be between 0 and 1");
+            }
+            this.hedgePercentile = hedgePercentile;
+            return this;
+        }
+
+        /**
+         * @param failureThreshold Consecutive failures after which an endpoint's circuit opens
+         * @param openDuration     How long an open circuit refuses calls before letting a trial call through
+         */
+        public Builder circuitBreaker(int failureThreshold, Duration openDuration) {
+            this.failureThreshold = failureThreshold;
+            this.openDuration = openDuration;
+            return this;
+        }
+
+        public ResilientAIWorker build() {
+            return new ResilientAIWorker(this);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package aiforge.ai;
+
+import aiforge.utils.Json;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Turns a model's JSON response into a typed value.
+ * <p>
+ * A response is parsed, validated against the request's {@link StructuredFormat} and bound to the target type
+ * with a cached {@link ObjectReader}. If that fails, the decoder first tries to repair the text locally: it
+ * drops anything before the first brace and after the object ends, and closes JSON that was cut off. Only when
+ * repair does not produce a valid value is the model asked again, with the problems it has to fix.
+ */
+public class ResponseDecoder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResponseDecoder.class);
+
+    private static final int MAX_REPORTED_RESPONSE_LENGTH = 2000;
+
+    /**
+     * @param responses Responses decoded, not counting re-asks
+     * @param valid     Responses that were valid as returned
+     * @param repaired  Responses that were valid after local repair
+     * @param reasks    Times the model was asked again
+     * @param failed    Responses that could not be decoded at all
+     */
+    public record Stats(long responses, long valid, long repaired, long reasks, long failed) {
+
+        /**
+         * @return Fraction of responses that were not valid as returned
+         */
+        public double parseFailureRate() {
+            return responses == 0 ? 0.0 : (double) (responses - valid) / responses;
+        }
+
+        /**
+         * @return Fraction of responses that could not be decoded at all
+         */
+        public double failureRate() {
+            return responses == 0 ? 0.0 : (double) failed / responses;
+        }
+    }
+
+    private final int maxReasks;
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final AtomicLong responses = new AtomicLong();
+    private final AtomicLong valid = new AtomicLong();
+    private final AtomicLong repaired = new AtomicLong();
+    private final AtomicLong reasks = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public ResponseDecoder() {
+        this(1);
+    }
+
+    /**
+     * @param maxReasks How often to ask the model again for a response that could not be repaired
+     */
+    public ResponseDecoder(int maxReasks) {
+        this.maxReasks = maxReasks;
+    }
+
+    /**
+     * Submit a request and decode its response, asking again if the response is invalid.
+     *
+     * @return A future completed with the decoded value, or with a {@link ResponseDecodingException}
+     */
+    public <T> CompletableFuture<T> request(AIWorker worker, AIRequest request, Class<T> type) {
+        responses.incrementAndGet();
+        return worker.submitAsync(request).thenCompose(response -> decodeOrReask(worker, request, response, type, 0));
+    }
+
+    /**
+     * Decode a response without asking again, repairing it if necessary.
+     *
+     * @throws ResponseDecodingException If the response cannot be decoded
+     */
+    public <T> T decode(AIRequest request, AIResponse response, Class<T> type) {
+        responses.incrementAndGet();
+        Attempt<T> attempt = tryDecode(request, response.response(), type);
+        if (attempt.value() == null) {
+            failed.incrementAndGet();
+            throw new ResponseDecodingException("Invalid response: " + attempt.problems());
+        }
+        (attempt.repaired() ? repaired : valid).incrementAndGet();
+        return attempt.value();
+    }
+
+    public Stats stats() {
+        return new Stats(responses.get(), valid.get(), repaired.get(), reasks.get(), failed.get());
+    }
+
+    private <T> CompletableFuture<T> decodeOrReask(AIWorker worker, AIRequest request, AIResponse response,
+                                                   Class<T> type, int reask) {
+        Attempt<T> attempt = tryDecode(request, response.response(), type);
+        if (attempt.value() != null) {
+            if (reask == 0) {
+                (attempt.repaired() ? repaired : valid).incrementAndGet();
+            }
+            return CompletableFuture.completedFuture(attempt.value());
+        }
+        if (reask >= maxReasks) {
+            failed.incrementAndGet();
+            return CompletableFuture.failedFuture(new ResponseDecodingException(
+                    "Invalid response after " + reask + " re-asks: " + attempt.problems()));
+        }
+        LOGGER.atWarn().log("Asking again for an invalid response: {}", attempt.problems());
+        reasks.incrementAndGet();
+        AIRequest reaskRequest = reaskRequest(request, response.response(), attempt.problems());
+        return worker.submitAsync(reaskRequest)
+                .thenCompose(next -> decodeOrReask(worker, request, next, type, reask + 1));
+    }
+
+    private record Attempt<T>(T value, List<String> problems, boolean repaired) {
+    }
+
+    private <T> Attempt<T> tryDecode(AIRequest request, String text, Class<T> type) {
+        Attempt<T> attempt = bind(request, text, type);
+        if (attempt.value() != null) {
+            return attempt;
+        }
+        String repairedText = repair(text);
+        if (repairedText != null && !repairedText.equals(text)) {
+            Attempt<T> repairedAttempt = bind(request, repairedText, type);
+            if (repairedAttempt.value() != null) {
+                return new Attempt<>(repairedAttempt.value(), List.of(), true);
+            }
+        }
+        return attempt;
+    }
+
+    private <T> Attempt<T> bind(AIRequest request, String text, Class<T> type) {
+        if (text == null || text.isBlank()) {
+            return new Attempt<>(null, List.of("the response was empty"), false);
+        }
+        try {
+            JsonNode tree = Json.MAPPER.readTree(text);
+            if (request.structuredFormat() != null) {
+                List<String> violations = request.structuredFormat().validate(tree);
+                if (!violations.isEmpty()) {
+                    return new Attempt<>(null, violations, false);
+                }
+            }
+            T value = readers.computeIfAbsent(type, Json.MAPPER::readerFor).readValue(tree);
+            return value == null
+                    ? new Attempt<>(null, List.of("the response was null"), false)
+                    : new Attempt<>(value, List.of(), false);
+        } catch (JsonProcessingException e) {
+            return new Attempt<>(null, List.of("the response is not valid JSON: " + e.getOriginalMessage()), false);
+        } catch (IOException e) {
+            return new Attempt<>(null, List.of("the response could not be read: " + e.getMessage()), false);
+        }
+    }
+
+    private static AIRequest reaskRequest(AIRequest request, String response, List<String> problems) {
+        String previous = response == null ? "" : response;
+        if (previous.length() > MAX_REPORTED_RESPONSE_LENGTH) {
+            previous = previous.substring(0, MAX_REPORTED_RESPONSE_LENGTH) + "...";
+        }
+        String prompt = request.prompt()
+                + "\n\nYour previous response could not be used:\n" + previous
+                + "\n\nProblems:\n- " + String.join("\n- ", problems)
+                + "\n\nRespond again with only a JSON object that fixes these problems and matches the required format.";
+        // A stand-alone request, so the invalid response does not become part of a session
+        return new AIRequest(request.system(), prompt, "", request.structuredFormat(), request.temperature(),
+                request.priority(), request.deadline(), null);
+    }
+
+    private static final int OBJECT_KEY = 0;
+    private static final int OBJECT_COLON = 1;
+    private static final int OBJECT_VALUE = 2;
+    private static final int ARRAY_VALUE = 3;
+    private static final int AFTER_VALUE = 4;
+    private static final int SCALAR = 5;
+
+    /**
+     * Cut a JSON object out of surrounding text, closing it if it was truncated.
+     * <p>
+     * Text before the first brace and after the object's closing brace is dropped. A truncated object is cut
+     * back to the last complete value and its open arrays and objects are closed; a string value that was cut
+     * off is closed where it ends.
+     *
+     * @return The repaired text, or null if it contains no object
+     */
+    static String repair(String text) {
+        if (text == null) {
+            return null;
+        }
+        int start = text.indexOf('{');
+        if (start < 0) {
+            return null;
+        }
+        StringBuilder closers = new StringBuilder();
+        int[] states = new int[16];
+        boolean inString = false;
+        boolean escaped = false;
+        boolean keyString = false;
+        int lastSafe = -1;
+        String lastSafeClosers = "";
+
+        for (int i = start; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int top = closers.length() - 1;
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                    if (keyString) {
+                        states[top] = OBJECT_COLON;
+                    } else {
+                        states[top] = AFTER_VALUE;
+                        lastSafe = i + 1;
+                        lastSafeClosers = closers.toString();
+                    }
+                }
+                continue;
+            }
+            if (top >= 0 && states[top] == SCALAR && (Character.isWhitespace(c) || c == ',' || c == '}' || c == ']')) {
+                states[top] = AFTER_VALUE;
+                lastSafe = i;
+                lastSafeClosers = closers.toString();
+            }
+            switch (c) {
+                case '"' -> {
+                    inString = true;
+                    keyString = top >= 0 && closers.charAt(top) == '}' && states[top] == OBJECT_KEY;
+                }
+                case '{', '[' -> {
+                    closers.append(c == '{' ? '}' : ']');
+                    if (closers.length() > states.length) {
+                        states = Arrays.copyOf(states, states.length * 2);
+                    }
+                    states[closers.length() - 1] = c == '{' ? OBJECT_KEY : ARRAY_VALUE;
+                    lastSafe = i + 1;
+                    lastSafeClosers = closers.toString();
+                }
+                case '}', ']' -> {
+                    closers.setLength(Math.max(0, top));
+                    if (closers.isEmpty()) {
+                        return text.substring(start, i + 1);
+                    }
+                    states[closers.length() - 1] = AFTER_VALUE;
+                    lastSafe = i + 1;
+                    lastSafeClosers = closers.toString();
+                }
+                case ':' -> states[top] = OBJECT_VALUE;
+                case ',' -> states[top] = closers.charAt(top) == '}' ? OBJECT_KEY : ARRAY_VALUE;
+                default -> {
+                    if (!Character.isWhitespace(c) && top >= 0) {
+                        states[top] = SCALAR;
+                    }
+                }
+            }
+        }
+
+        // The object was cut off
+        if (inString && !keyString) {
+            int end = escaped ? text.length() - 1 : text.length();
+            return text.substring(start, end) + '"' + new StringBuilder(closers).reverse();
+        }
+        return text.substring(start, lastSafe) + new StringBuilder(lastSafeClosers).reverse();
+    }
+}
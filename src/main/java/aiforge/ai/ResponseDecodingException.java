@@ -0,0 +1,15 @@
+package aiforge.ai;
+
+/**
+ * Thrown when a model's response cannot be turned into the expected value, even after repair and re-asking.
+ */
+public class ResponseDecodingException extends AIWorkerException {
+
+    public ResponseDecodingException(String message) {
+        super(message);
+    }
+
+    public ResponseDecodingException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
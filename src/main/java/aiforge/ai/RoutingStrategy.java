@@ -0,0 +1,14 @@
+package aiforge.ai;
+
+/**
+ * How a {@link LoadBalancedOllamaWorker} picks the backend for the next request.
+ */
+public enum RoutingStrategy {
+    /** Send the request to the backend with the fewest requests in flight. */
+    LEAST_OUTSTANDING,
+    /**
+     * Send the request to the backend with the lowest expected completion time: its moving average
+     * generation time scaled by the number of requests already in flight on it.
+     */
+    LATENCY_WEIGHTED
+}
@@ -0,0 +1,18 @@
+package aiforge.ai;
+
+import java.time.Duration;
+
+/**
+ * Snapshot of a worker's request queue.
+ *
+ * @param queueDepth  Requests currently waiting
+ * @param dispatched  Requests handed to the backend so far
+ * @param expired     Requests dropped because their deadline passed while queued
+ * @param rejected    Requests refused because the queue was full
+ * @param shed        Queued requests dropped to make room for newer ones
+ * @param averageWait Mean time dispatched requests spent queued
+ * @param maxWait     Longest time a dispatched request spent queued
+ */
+public record SchedulerMetrics(int queueDepth, long dispatched, long expired, long rejected, long shed,
+                               Duration averageWait, Duration maxWait) {
+}
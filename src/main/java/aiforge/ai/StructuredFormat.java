@@ -0,0 +1,220 @@
+package aiforge.ai;
+
+import aiforge.utils.Json;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable description of the JSON object a model must respond with. The JSON schema is compiled once, when
+ * the format is built, so a format held in a constant costs nothing per request: workers reuse the compiled
+ * schema as is.
+ * <pre>{@code
+ * StructuredFormat format = StructuredFormat.builder()
+ *         .property("title", "string", true)
+ *         .enumProperty("priority", true, "low", "medium", "high")
+ *         .arrayProperty("steps", StructuredFormat.builder().property("action", "string", true).build(), true)
+ *         .build();
+ * }</pre>
+ */
+public final class StructuredFormat {
+
+    /**
+     * @param type       A JSON schema type: string, number, integer, boolean, array or object
+     * @param items      The schema of an array's elements, otherwise null
+     * @param object     The properties of an object, otherwise null
+     * @param enumValues The values a string may take, or null if it may take any
+     */
+    public record Schema(String type, Schema items, StructuredFormat object, List<String> enumValues) {
+
+        public static Schema of(String type) {
+            return new Schema(type, null, null, null);
+        }
+
+        public static Schema arrayOf(Schema items) {
+            return new Schema("array", items, null, null);
+        }
+
+        public static Schema object(StructuredFormat object) {
+            return new Schema("object", null, object, null);
+        }
+
+        public static Schema enumOf(String... values) {
+            return new Schema("string", null, null, List.of(values));
+        }
+    }
+
+    public record Property(String name, Schema schema, boolean required) {
+    }
+
+    private final List<Property> properties;
+    private final ObjectNode schema;
+    private final String schemaJson;
+    private final SerializableString encodedSchema;
+
+    private StructuredFormat(List<Property> properties) {
+        this.properties = List.copyOf(properties);
+        this.schema = compile(this.properties);
+        try {
+            this.schemaJson = Json.MAPPER.writeValueAsString(schema);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize schema", e);
+        }
+        this.encodedSchema = new SerializedString(schemaJson);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public List<Property> properties() {
+        return properties;
+    }
+
+    /**
+     * @return The compiled JSON schema. It is shared by every request using this format and must not be modified.
+     */
+    public JsonNode schema() {
+        return schema;
+    }
+
+    /**
+     * @return The compiled JSON schema, serialized
+     */
+    public String schemaJson() {
+        return schemaJson;
+    }
+
+    /**
+     * @return The serialized schema, which caches its UTF-8 encoding so it can be written as a raw JSON value
+     */
+    public SerializableString encodedSchema() {
+        return encodedSchema;
+    }
+
+    /**
+     * Check a JSON value against this format.
+     *
+     * @return A description of every way the value violates the format; empty if it conforms
+     */
+    public List<String> validate(JsonNode value) {
+        List<String> violations = new ArrayList<>();
+        validate(value, this, "$", violations);
+        return violations;
+    }
+
+    private static void validate(JsonNode value, StructuredFormat format, String path, List<String> violations) {
+        if (!value.isObject()) {
+            violations.add(path + " must be an object");
+            return;
+        }
+        for (Property property : format.properties) {
+            JsonNode propertyValue = value.get(property.name());
+            String propertyPath = path + "." + property.name();
+            if (propertyValue == null || propertyValue.isNull()) {
+                if (property.required()) {
+                    violations.add(propertyPath + " is required");
+                }
+            } else {
+                validate(propertyValue, property.schema(), propertyPath, violations);
+            }
+        }
+    }
+
+    private static void validate(JsonNode value, Schema schema, String path, List<String> violations) {
+        if (schema.object() != null) {
+            validate(value, schema.object(), path, violations);
+            return;
+        }
+        boolean matches = switch (schema.type()) {
+            case "string" -> value.isTextual();
+            case "integer" -> value.isIntegralNumber();
+            case "number" -> value.isNumber();
+            case "boolean" -> value.isBoolean();
+            case "array" -> value.isArray();
+            case "object" -> value.isObject();
+            default -> true;
+        };
+        if (!matches) {
+            violations.add(path + " must be of type " + schema.type());
+            return;
+        }
+        if (schema.enumValues() != null && !schema.enumValues().contains(value.asText())) {
+            violations.add(path + " must be one of " + schema.enumValues());
+        }
+        if (schema.items() != null) {
+            for (int i = 0; i < value.size(); i++) {
+                validate(value.get(i), schema.items(), path + "[" + i + "]", violations);
+            }
+        }
+    }
+
+    private static ObjectNode compile(List<Property> properties) {
+        ObjectNode schema = Json.MAPPER.createObjectNode().put("type", "object");
+        ObjectNode propertySchemas = schema.putObject("properties");
+        ArrayNode required = schema.putArray("required");
+        for (Property property : properties) {
+            propertySchemas.set(property.name(), compile(property.schema()));
+            if (property.required()) {
+                required.add(property.name());
+            }
+        }
+        schema.put("additionalProperties", false);
+        return schema;
+    }
+
+    private static ObjectNode compile(Schema schema) {
+        if (schema.object() != null) {
+            return schema.object().schema.deepCopy();
+        }
+        ObjectNode node = Json.MAPPER.createObjectNode().put("type", schema.type());
+        if (schema.items() != null) {
+            node.set("items", compile(schema.items()));
+        }
+        if (schema.enumValues() != null) {
+            ArrayNode values = node.putArray("enum");
+            schema.enumValues().forEach(values::add);
+        }
+        return node;
+    }
+
+    public static class Builder {
+
+        private final List<Property> properties = new ArrayList<>();
+
+        public Builder property(String name, Schema schema, boolean required) {
+            properties.add(new Property(name, schema, required));
+            return this;
+        }
+
+        public Builder property(String name, String type, boolean required) {
+            return property(name, Schema.of(type), required);
+        }
+
+        public Builder arrayProperty(String name, String itemType, boolean required) {
+            return property(name, Schema.arrayOf(Schema.of(itemType)), required);
+        }
+
+        public Builder arrayProperty(String name, StructuredFormat itemFormat, boolean required) {
+            return property(name, Schema.arrayOf(Schema.object(itemFormat)), required);
+        }
+
+        public Builder objectProperty(String name, StructuredFormat format, boolean required) {
+            return property(name, Schema.object(format), required);
+        }
+
+        public Builder enumProperty(String name, boolean required, String... values) {
+            return property(name, Schema.enumOf(values), required);
+        }
+
+        public StructuredFormat build() {
+            return new StructuredFormat(properties);
+        }
+    }
+}
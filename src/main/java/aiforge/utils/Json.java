@@ -0,0 +1,18 @@
+package aiforge.utils;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Shared, pre-configured Jackson mapper. {@link ObjectMapper} is thread-safe once configured and
+ * expensive to build, so every component should use this instance (or readers/writers derived
+ * from it) rather than creating its own.
+ */
+public final class Json {
+
+    public static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private Json() {
+    }
+}
@@ -1,49 +1,235 @@
 package aiforge.utils;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import aiforge.ai.StructuredFormat;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
 import java.io.IOException;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public class OllamaApiClient {
 
-    private static final String BASE_URL = "http://localhost:11434/api/generate";
+    public static final String DEFAULT_BASE_URL = "http://localhost:11434";
+
+    private static final MediaType JSON_MEDIA_TYPE = MediaType.get("application/json");
+    private static final ObjectReader RESPONSE_READER = Json.MAPPER.readerFor(OllamaResponse.class);
+    private static final ObjectReader EMBEDDING_RESPONSE_READER = Json.MAPPER.readerFor(OllamaEmbeddingResponse.class);
+
+    // Every client derives from this one so they all share a single keep-alive connection pool
+    private static final OkHttpClient SHARED_HTTP_CLIENT = new OkHttpClient.Builder()
+            .connectionPool(new ConnectionPool(32, 5, TimeUnit.MINUTES))
+            .build();
+
+    private final OkHttpClient httpClient;
+    private final HttpUrl baseUrl;
+    private final HttpUrl generateUrl;
+    private final HttpUrl versionUrl;
+    private final HttpUrl embeddingsUrl;
+
+    private OllamaApiClient(Builder builder) {
+        this.baseUrl = HttpUrl.get(builder.baseUrl);
+        this.generateUrl = baseUrl.resolve("/api/generate");
+        this.versionUrl = baseUrl.resolve("/api/version");
+        this.embeddingsUrl = baseUrl.resolve("/api/embeddings");
+        this.httpClient = SHARED_HTTP_CLIENT.newBuilder()
+                .connectTimeout(builder.connectTimeout)
+                .readTimeout(builder.readTimeout)
+                .callTimeout(builder.callTimeout)
+                .build();
+    }
 
-    public static OllamaResponse sendRequest(OllamaRequest request) throws IOException {
-        // Convert the request object to JSON
-        String requestBody = request.toJson();
+    /**
+     * Create a client for a local Ollama instance with default timeouts.
+     */
+    public static OllamaApiClient create() {
+        return new Builder().build();
+    }
 
-        // Create the connection
-        URL url = new URL(BASE_URL);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type", "application/json");
-        connection.setDoOutput(true);
+    public OllamaResponse sendRequest(OllamaRequest request) throws IOException {
+        return sendRequest(request, null);
+    }
 
-        // Send the request body
-        try (OutputStream outputStream = connection.getOutputStream()) {
-            outputStream.write(requestBody.getBytes());
-            outputStream.flush();
+    /**
+     * @param timeout Maximum time for the whole call, or null for the client's default
+     * @throws java.io.InterruptedIOException If the timeout passes first
+     */
+    public OllamaResponse sendRequest(OllamaRequest request, Duration timeout) throws IOException {
+        try (Response response = newGenerateCall(request, timeout).execute()) {
+            if (!response.isSuccessful()) {
+                throw new HttpStatusException(response.code());
+            }
+            return RESPONSE_READER.readValue(response.body().byteStream());
         }
+    }
 
-        // Read the response
-        int responseCode = connection.getResponseCode();
-        if (responseCode == HttpURLConnection.HTTP_OK) {
-            ObjectMapper mapper = new ObjectMapper();
-            return mapper.readValue(connection.getInputStream(), OllamaResponse.class);
-        } else {
-            throw new IOException("HTTP error code: " + responseCode);
+    /**
+     * Send a request with {@code stream=true} and decode Ollama's NDJSON chunk stream as it arrives.
+     *
+     * @param request       The request to send; its {@code stream} flag should be set
+     * @param tokenListener Called with the text of each chunk, in order, as soon as it is decoded
+     * @return The final chunk, carrying the generation statistics, with the full response text
+     */
+    public OllamaResponse sendStreamingRequest(OllamaRequest request, Consumer<String> tokenListener) throws IOException {
+        return sendStreamingRequest(request, null, tokenListener);
+    }
+
+    /**
+     * @param timeout Maximum time for the whole call including the stream, or null for the client's default
+     * @see #sendStreamingRequest(OllamaRequest, Consumer)
+     */
+    public OllamaResponse sendStreamingRequest(OllamaRequest request, Duration timeout, Consumer<String> tokenListener)
+            throws IOException {
+        try (Response response = newGenerateCall(request, timeout).execute()) {
+            if (!response.isSuccessful()) {
+                throw new HttpStatusException(response.code());
+            }
+            StringBuilder text = new StringBuilder();
+            try (MappingIterator<OllamaResponse> chunks = RESPONSE_READER.readValues(response.body().byteStream())) {
+                while (chunks.hasNextValue()) {
+                    OllamaResponse chunk = chunks.nextValue();
+                    if (chunk.response() != null && !chunk.response().isEmpty()) {
+                        text.append(chunk.response());
+                        tokenListener.accept(chunk.response());
+                    }
+                    if (chunk.done()) {
+                        return new OllamaResponse(chunk.model(), chunk.created_at(), text.toString(), true,
+                                chunk.doneReason(), chunk.context(), chunk.totalDuration(), chunk.loadDuration(),
+                                chunk.promptEvalCount(), chunk.promptEvalDuration(), chunk.evalCount(), chunk.evalDuration());
+                    }
+                }
+            }
+            throw new IOException("Stream ended before the final chunk was received");
+        }
+    }
+
+    private Call newGenerateCall(OllamaRequest request, Duration timeout) {
+        Call call = httpClient.newCall(new Request.Builder()
+                .url(generateUrl)
+                .post(new OllamaRequestBody(request))
+                .build());
+        if (timeout != null) {
+            call.timeout().timeout(Math.max(1, timeout.toMillis()), TimeUnit.MILLISECONDS);
+        }
+        return call;
+    }
+
+    /**
+     * Compute the embedding of a piece of text.
+     *
+     * @param model An embedding model available on the server, e.g. {@code nomic-embed-text}
+     */
+    public float[] embed(String model, String text) throws IOException {
+        byte[] body = Json.MAPPER.writeValueAsBytes(Map.of("model", model, "prompt", text));
+        Request httpRequest = new Request.Builder()
+                .url(embeddingsUrl)
+                .post(RequestBody.create(body, JSON_MEDIA_TYPE))
+                .build();
+
+        try (Response response = httpClient.newCall(httpRequest).execute()) {
+            if (!response.isSuccessful()) {
+                throw new HttpStatusException(response.code());
+            }
+            OllamaEmbeddingResponse embeddingResponse = EMBEDDING_RESPONSE_READER.readValue(response.body().byteStream());
+            if (embeddingResponse.embedding() == null) {
+                throw new IOException("Response did not contain an embedding");
+            }
+            return embeddingResponse.embedding();
+        }
+    }
+
+    /**
+     * Check whether the server is up and answering requests.
+     *
+     * @param timeout Maximum time to wait for the server to answer
+     * @return True if the server answered successfully within the timeout
+     */
+    public boolean isHealthy(Duration timeout) {
+        Call call = httpClient.newCall(new Request.Builder().url(versionUrl).get().build());
+        call.timeout().timeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        try (Response response = call.execute()) {
+            return response.isSuccessful();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public String baseUrl() {
+        return baseUrl.toString();
+    }
+
+    /**
+     * Thrown when the server answers with an HTTP error status.
+     */
+    public static class HttpStatusException extends IOException {
+
+        private final int statusCode;
+
+        public HttpStatusException(int statusCode) {
+            super("HTTP error code: " + statusCode);
+            this.statusCode = statusCode;
+        }
+
+        public int statusCode() {
+            return statusCode;
+        }
+    }
+
+    public static class Builder {
+
+        private String baseUrl = DEFAULT_BASE_URL;
+        private Duration connectTimeout = Duration.ofSeconds(10);
+        // Non-streaming generations only send bytes once the whole completion is done
+        private Duration readTimeout = Duration.ofMinutes(5);
+        // A stream that trickles tokens never trips the read timeout, so also bound the call as a whole
+        private Duration callTimeout = Duration.ofMinutes(10);
+
+        public Builder baseUrl(String baseUrl) {
+            this.baseUrl = baseUrl;
+            return this;
+        }
+
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        public Builder readTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        /**
+         * @param callTimeout Maximum time for a whole call, including reading a streamed response; zero for none
+         */
+        public Builder callTimeout(Duration callTimeout) {
+            this.callTimeout = callTimeout;
+            return this;
+        }
+
+        public OllamaApiClient build() {
+            return new OllamaApiClient(this);
         }
     }
 
     public static void main(String[] args) {
         try {
             // Build a sample request
-            OllamaRequest.StructuredFormat structuredFormat = new OllamaRequest.StructuredFormat()
-                    .addProperty("taskTitle", "string", true)
-                    .addProperty("taskPriority", "integer", true)
-                    .addArrayProperty("requirements", "string", true);
+            StructuredFormat structuredFormat = StructuredFormat.builder()
+                    .property("taskTitle", "string", true)
+                    .property("taskPriority", "integer", true)
+                    .arrayProperty("requirements", "string", true)
+                    .build();
             OllamaRequest request = new OllamaRequest.Builder()
                     .model(OllamaRequest.Model.LLAMA3P1)
                     .prompt("Generate a task dataset including a title, priority as a number, and a list of requirements.")
@@ -52,7 +238,7 @@ public class OllamaApiClient {
                     .build();
 
             // Send the request and print the response
-            OllamaResponse response = sendRequest(request);
+            OllamaResponse response = create().sendRequest(request);
             System.out.println("Response: " + response);
 
         } catch (IOException e) {
@@ -0,0 +1,4 @@
+package aiforge.utils;
+
+public record OllamaEmbeddingResponse(float[] embedding) {
+}
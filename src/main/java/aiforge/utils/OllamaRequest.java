@@ -1,50 +1,134 @@
 package aiforge.utils;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-
-import java.util.ArrayList;
-import java.util.List;
-
+import aiforge.ai.StructuredFormat;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Body of a request to Ollama's {@code /api/generate} endpoint.
+ *
+ * @param format  Pre-serialized JSON value of the {@code format} field
+ * @param options Serialized JSON object of model options
+ * @param context Context returned by a previous response, to continue that conversation
+ */
 public record OllamaRequest(
         String model,
         String prompt,
         String suffix,
-        String format,
+        SerializableString format,
         String options,
         String system,
         String template,
         boolean stream,
         String raw,
-        String keepAlive
+        String keepAlive,
+        int[] context
 ) {
 
+    private static final SerializableString MODEL = new SerializedString("model");
+    private static final SerializableString PROMPT = new SerializedString("prompt");
+    private static final SerializableString SUFFIX = new SerializedString("suffix");
+    private static final SerializableString FORMAT = new SerializedString("format");
+    private static final SerializableString OPTIONS = new SerializedString("options");
+    private static final SerializableString SYSTEM = new SerializedString("system");
+    private static final SerializableString TEMPLATE = new SerializedString("template");
+    private static final SerializableString STREAM = new SerializedString("stream");
+    private static final SerializableString RAW = new SerializedString("raw");
+    private static final SerializableString KEEP_ALIVE = new SerializedString("keepAlive");
+    private static final SerializableString CONTEXT = new SerializedString("context");
+
+    // System prompts are long and the same for every request of an agent, so each is escaped and encoded once
+    private static final int MAX_ENCODED_SYSTEM_PROMPTS = 256;
+    private static final Map<String, SerializableString> ENCODED_SYSTEM_PROMPTS = new ConcurrentHashMap<>();
+
+    /**
+     * Write the request as JSON, streaming each field to the generator without building an intermediate tree
+     * or string.
+     */
+    public void writeTo(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        if (model != null) {
+            generator.writeFieldName(MODEL);
+            generator.writeString(model);
+        }
+        if (prompt != null) {
+            generator.writeFieldName(PROMPT);
+            generator.writeString(prompt);
+        }
+        if (suffix != null) {
+            generator.writeFieldName(SUFFIX);
+            generator.writeString(suffix);
+        }
+        if (format != null) {
+            generator.writeFieldName(FORMAT);
+            generator.writeRawValue(format);
+        }
+        if (options != null) {
+            generator.writeFieldName(OPTIONS);
+            generator.writeRawValue(options);
+        }
+        if (system != null) {
+            generator.writeFieldName(SYSTEM);
+            generator.writeString(encodedSystemPrompt(system));
+        }
+        if (template != null) {
+            generator.writeFieldName(TEMPLATE);
+            generator.writeString(template);
+        }
+        generator.writeFieldName(STREAM);
+        generator.writeBoolean(stream);
+        if (raw != null) {
+            generator.writeFieldName(RAW);
+            generator.writeString(raw);
+        }
+        if (keepAlive != null) {
+            generator.writeFieldName(KEEP_ALIVE);
+            generator.writeString(keepAlive);
+        }
+        if (context != null) {
+            generator.writeFieldName(CONTEXT);
+            generator.writeArray(context, 0, context.length);
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Write the request as UTF-8 encoded JSON. The stream is flushed but not closed.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        try (JsonGenerator generator = Json.MAPPER.getFactory().createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            writeTo(generator);
+        }
+    }
+
     public String toJson() {
-        try {
-            ObjectMapper mapper = new ObjectMapper();
-            ObjectNode jsonObject = mapper.createObjectNode();
-
-            if (model != null) jsonObject.put("model", model);
-            if (prompt != null) jsonObject.put("prompt", prompt);
-            if (suffix != null) jsonObject.put("suffix", suffix);
-            if (format != null) {
-                try {
-                    jsonObject.set("format", mapper.readTree(format));
-                } catch (Exception e) {
-                    throw new RuntimeException("Invalid format JSON", e);
-                }
-            }
-            if (options != null) jsonObject.put("options", options);
-            if (system != null) jsonObject.put("system", system);
-            if (template != null) jsonObject.put("template", template);
-            jsonObject.put("stream", stream);
-            if (raw != null) jsonObject.put("raw", raw);
-            if (keepAlive != null) jsonObject.put("keepAlive", keepAlive);
+        StringWriter json = new StringWriter();
+        try (JsonGenerator generator = Json.MAPPER.getFactory().createGenerator(json)) {
+            writeTo(generator);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize OllamaRequest to JSON", e);
+        }
+        return json.toString();
+    }
 
-            return mapper.writeValueAsString(jsonObject);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to serialize OllamaRequest to JSON", e);
+    private static SerializableString encodedSystemPrompt(String system) {
+        SerializableString encoded = ENCODED_SYSTEM_PROMPTS.get(system);
+        if (encoded == null) {
+            if (ENCODED_SYSTEM_PROMPTS.size() >= MAX_ENCODED_SYSTEM_PROMPTS) {
+                ENCODED_SYSTEM_PROMPTS.clear();
+            }
+            encoded = ENCODED_SYSTEM_PROMPTS.computeIfAbsent(system, SerializedString::new);
         }
+        return encoded;
     }
 
     public enum Model {
@@ -62,77 +146,19 @@ public record OllamaRequest(
         }
     }
 
-    public static class StructuredFormat {
-        private final List<Property> properties = new ArrayList<>();
-
-        public static class Property {
-            private final String name;
-            private final String type;
-            private final boolean required;
-            private final Property items;
-
-            public Property(String name, String type, boolean required, Property items) {
-                this.name = name;
-                this.type = type;
-                this.required = required;
-                this.items = items;
-            }
-
-            public String toJson() {
-                StringBuilder json = new StringBuilder("{");
-                json.append("\"type\":\"").append(type).append("\"");
-                if (items != null) {
-                    json.append(",\"items\":").append(items.toJson());
-                }
-                json.append("}");
-                return json.toString();
-            }
-        }
-
-        public StructuredFormat addProperty(String name, String type, boolean required) {
-            properties.add(new Property(name, type, required, null));
-            return this;
-        }
-
-        public StructuredFormat addArrayProperty(String name, String itemType, boolean required) {
-            properties.add(new Property(name, "array", required, new Property(null, itemType, false, null)));
-            return this;
-        }
-
-        public String toJson() {
-            StringBuilder json = new StringBuilder("{\"type\":\"object\",\"properties\":{");
-            for (Property property : properties) {
-                json.append("\"").append(property.name).append("\":").append(property.toJson()).append(",");
-            }
-            if (!properties.isEmpty()) {
-                json.deleteCharAt(json.length() - 1);
-            }
-            json.append("},\"required\":[");
-            for (Property property : properties) {
-                if (property.required) {
-                    json.append("\"").append(property.name).append("\", ");
-                }
-            }
-            if (json.charAt(json.length() - 1) == ' ') {
-                json.delete(json.length() - 2, json.length());
-            }
-            json.append("]}");
-            return json.toString();
-        }
-    }
-
     public static class Builder {
 
         private String model;
         private String prompt;
         private String suffix;
-        private String format;
+        private SerializableString format;
         private String options;
         private String system;
         private String template;
         private boolean stream;
         private String raw;
         private String keepAlive;
+        private int[] context;
 
         public Builder model(Model model) {
             this.model = model.value();
@@ -149,13 +175,19 @@ public record OllamaRequest(
             return this;
         }
 
+        /**
+         * @param format A named format, such as {@code json}
+         */
         public Builder format(String format) {
-            this.format = format;
+            this.format = new SerializedString('"' + format + '"');
             return this;
         }
 
+        /**
+         * Constrain the response to a JSON schema. The format's pre-encoded schema is used as is.
+         */
         public Builder structuredFormat(StructuredFormat structuredFormat) {
-            this.format = structuredFormat.toJson();
+            this.format = structuredFormat.encodedSchema();
             return this;
         }
 
@@ -189,8 +221,17 @@ public record OllamaRequest(
             return this;
         }
 
+        /**
+         * @param context The context returned by a previous response, to continue that conversation
+         */
+        public Builder context(int[] context) {
+            this.context = context;
+            return this;
+        }
+
         public OllamaRequest build() {
-            return new OllamaRequest(model, prompt, suffix, format, options, system, template, stream, raw, keepAlive);
+            return new OllamaRequest(model, prompt, suffix, format, options, system, template, stream, raw, keepAlive,
+                    context);
         }
     }
 }
@@ -0,0 +1,32 @@
+package aiforge.utils;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+import java.io.IOException;
+
+/**
+ * Request body that serializes an {@link OllamaRequest} straight into the connection's buffer, instead of
+ * into a string that is then copied into a byte array.
+ */
+class OllamaRequestBody extends RequestBody {
+
+    private static final MediaType JSON_MEDIA_TYPE = MediaType.get("application/json");
+
+    private final OllamaRequest request;
+
+    OllamaRequestBody(OllamaRequest request) {
+        this.request = request;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return JSON_MEDIA_TYPE;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        request.writeTo(sink.outputStream());
+    }
+}
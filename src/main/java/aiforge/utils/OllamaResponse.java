@@ -2,15 +2,16 @@ package aiforge.utils;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
-import java.util.List;
-
+/**
+ * @param context The conversation so far as model tokens; pass it to the next request to continue it
+ */
 public record OllamaResponse(
         String model,
         String created_at,
         String response,
         boolean done,
         @JsonProperty("done_reason") String doneReason,
-        List<Integer> context,
+        int[] context,
         @JsonProperty("total_duration") long totalDuration,
         @JsonProperty("load_duration") long loadDuration,
         @JsonProperty("prompt_eval_count") int promptEvalCount,
@@ -5,31 +5,36 @@ import aiforge.ai.AIRequest;
 public class RequestMapper {
 
     public static OllamaRequest mapToOllamaRequest(AIRequest aiRequest) {
+        return mapToOllamaRequest(aiRequest, false);
+    }
 
-        AIRequest.StructuredFormat structuredFormat = aiRequest.structuredFormat();
-        if (structuredFormat != null) {
-            OllamaRequest.StructuredFormat ollamaStructuredFormat = new OllamaRequest.StructuredFormat();
-            for (AIRequest.StructuredFormat.Property property : structuredFormat.properties()) {
-                if (property.items() != null) {
-                    ollamaStructuredFormat.addArrayProperty(property.name(), property.items().type(), property.required());
-                } else {
-                    ollamaStructuredFormat.addProperty(property.name(), property.type(), property.required());
-                }
-            }
-            return new OllamaRequest.Builder()
-                    .model(OllamaRequest.Model.LLAMA3P1) // Default to LLAMA3P1 or customize based on context
-                    .prompt(aiRequest.prompt())
-                    .system(aiRequest.system())
-                    .structuredFormat(ollamaStructuredFormat)
-                    .stream(false) // Default setting, customize as needed
-                    .build();
-        }
+    public static OllamaRequest mapToOllamaRequest(AIRequest aiRequest, boolean stream) {
+        return mapToOllamaRequest(aiRequest, stream, null);
+    }
 
-        return new OllamaRequest.Builder()
-                .model(OllamaRequest.Model.LLAMA3P1) // Default to LLAMA3P2 or customize based on context
+    /**
+     * @param context Context returned for the previous request of the same session, or null to start afresh.
+     *                The system prompt is already part of it, so it is left out of the request.
+     */
+    public static OllamaRequest mapToOllamaRequest(AIRequest aiRequest, boolean stream, int[] context) {
+        OllamaRequest.Builder builder = new OllamaRequest.Builder()
+                .model(OllamaRequest.Model.LLAMA3P1) // Default to LLAMA3P1 or customize based on context
                 .prompt(aiRequest.prompt())
-                .system(aiRequest.system())
-                .stream(false) // Default setting, customize as needed
-                .build();
+                .system(context == null ? aiRequest.system() : null)
+                .options(toOptions(aiRequest))
+                .stream(stream)
+                .context(context);
+
+        if (aiRequest.structuredFormat() != null) {
+            builder.structuredFormat(aiRequest.structuredFormat());
+        }
+        return builder.build();
+    }
+
+    private static String toOptions(AIRequest aiRequest) {
+        if (aiRequest.temperature() == null) {
+            return null;
+        }
+        return "{\"temperature\":" + aiRequest.temperature() + "}";
     }
 }
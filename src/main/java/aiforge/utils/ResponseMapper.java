@@ -6,6 +6,7 @@ public class ResponseMapper {
 
     public static AIResponse mapToAIRequest(OllamaResponse ollamaResponse) {
         // Map back to AIRequest using response data
-        return AIResponse.of(ollamaResponse.response());
+        return new AIResponse(ollamaResponse.response(), "", ollamaResponse.evalCount(), ollamaResponse.evalDuration(),
+                ollamaResponse.totalDuration());
     }
 }
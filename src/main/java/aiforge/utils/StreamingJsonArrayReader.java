@@ -0,0 +1,99 @@
+package aiforge.utils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Incrementally parses a JSON object as it is generated and reports each string element of one of its
+ * top-level array fields as soon as that element is complete, without waiting for the rest of the document.
+ * Feed it text chunks in order, e.g. as the token listener of a streaming request.
+ */
+public class StreamingJsonArrayReader implements Consumer<String> {
+
+    private final String fieldName;
+    private final Consumer<String> itemListener;
+    private final JsonParser parser;
+
+    private int depth;
+    private int targetArrayDepth = -1;
+    private boolean expectingTargetArray;
+    private int itemCount;
+    private IOException failure;
+
+    public StreamingJsonArrayReader(String fieldName, Consumer<String> itemListener) {
+        this.fieldName = fieldName;
+        this.itemListener = itemListener;
+        try {
+            this.parser = Json.MAPPER.getFactory().createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to create non-blocking JSON parser", e);
+        }
+    }
+
+    @Override
+    public void accept(String chunk) {
+        if (failure != null || chunk.isEmpty()) {
+            return;
+        }
+        byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+        try {
+            ((ByteArrayFeeder) parser.getNonBlockingInputFeeder()).feedInput(bytes, 0, bytes.length);
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                handle(token);
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    private void handle(JsonToken token) throws IOException {
+        switch (token) {
+            case START_OBJECT, START_ARRAY -> {
+                depth++;
+                if (expectingTargetArray && token == JsonToken.START_ARRAY) {
+                    targetArrayDepth = depth;
+                }
+                expectingTargetArray = false;
+            }
+            case END_OBJECT, END_ARRAY -> {
+                if (depth == targetArrayDepth) {
+                    targetArrayDepth = -1;
+                }
+                depth--;
+            }
+            case FIELD_NAME -> expectingTargetArray = depth == 1 && fieldName.equals(parser.currentName());
+            case VALUE_STRING -> {
+                expectingTargetArray = false;
+                if (depth == targetArrayDepth) {
+                    itemCount++;
+                    itemListener.accept(parser.getText());
+                }
+            }
+            default -> expectingTargetArray = false;
+        }
+    }
+
+    /**
+     * @return The number of array elements reported so far
+     */
+    public int itemCount() {
+        return itemCount;
+    }
+
+    /**
+     * @return True if the input stopped being valid JSON; no further elements are reported after that
+     */
+    public boolean failed() {
+        return failure != null;
+    }
+
+    public IOException failure() {
+        return failure;
+    }
+}
@@ -0,0 +1,44 @@
+package aiforge.ai;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AbstractAIWorkerTest {
+
+    private static final BackendException FAILURE = new BackendException("Backend unavailable", null);
+
+    private final AbstractAIWorker worker = new AbstractAIWorker() {
+        @Override
+        public CompletableFuture<AIResponse> submitAsync(AIRequest request) {
+            return "fail".equals(request.prompt())
+                    ? CompletableFuture.failedFuture(FAILURE)
+                    : CompletableFuture.completedFuture(AIResponse.of("Hello", request.id()));
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    };
+
+    @Test
+    void returnsResponseOnce() {
+        String requestId = worker.submitRequest(AIRequest.of("system", "prompt"));
+
+        assertEquals(Optional.of("Hello"), worker.getResponse(requestId));
+        assertEquals(Optional.empty(), worker.getResponse(requestId));
+    }
+
+    @Test
+    void throwsErrorOfFailedRequest() {
+        String requestId = worker.submitRequest(AIRequest.of("system", "fail"));
+
+        assertSame(FAILURE, assertThrows(BackendException.class, () -> worker.getResponse(requestId)));
+        assertEquals(Optional.empty(), worker.getResponse(requestId));
+    }
+}
@@ -0,0 +1,101 @@
+package aiforge.ai;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchingAIWorkerTest {
+
+    private final RecordingBatchWorker delegate = new RecordingBatchWorker();
+
+    @Test
+    void sendsBatchOnceWindowCloses() throws Exception {
+        BatchingAIWorker worker = new BatchingAIWorker.Builder(delegate)
+                .window(Duration.ofMillis(50))
+                .maxBatchSize(16)
+                .build();
+
+        CompletableFuture<AIResponse> first = worker.submitAsync(AIRequest.of("system", "first"));
+        CompletableFuture<AIResponse> second = worker.submitAsync(AIRequest.of("system", "second"));
+        assertTrue(delegate.batches.isEmpty());
+
+        assertEquals("first", first.get(10, TimeUnit.SECONDS).response());
+        assertEquals("second", second.get(10, TimeUnit.SECONDS).response());
+        assertEquals(List.of(2), delegate.batchSizes());
+        assertEquals(1, worker.stats().batches());
+        worker.shutdown();
+    }
+
+    @Test
+    void sendsBatchOnceFullWithoutWaitingForWindow() throws Exception {
+        BatchingAIWorker worker = new BatchingAIWorker.Builder(delegate)
+                .window(Duration.ofMinutes(5))
+                .maxBatchSize(3)
+                .build();
+
+        List<CompletableFuture<AIResponse>> responses = List.of(
+                worker.submitAsync(AIRequest.of("system", "a")),
+                worker.submitAsync(AIRequest.of("system", "b")),
+                worker.submitAsync(AIRequest.of("system", "c")),
+                worker.submitAsync(AIRequest.of("system", "d")));
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(responses.get(i).isDone());
+        }
+        assertFalse(responses.get(3).isDone());
+        assertEquals(List.of(3), delegate.batchSizes());
+        worker.shutdown();
+    }
+
+    @Test
+    void shutdownSendsPendingRequestsBeforeShuttingDownDelegate() throws Exception {
+        BatchingAIWorker worker = new BatchingAIWorker.Builder(delegate)
+                .window(Duration.ofMinutes(5))
+                .build();
+
+        CompletableFuture<AIResponse> pending = worker.submitAsync(AIRequest.of("system", "pending"));
+        worker.shutdown();
+
+        assertEquals("pending", pending.get(10, TimeUnit.SECONDS).response());
+        assertEquals(List.of(1), delegate.batchSizes());
+        assertTrue(delegate.shutdown);
+    }
+
+    /**
+     * Answers each request with its prompt and remembers the batches it was given.
+     */
+    private static class RecordingBatchWorker extends AbstractAIWorker implements BatchAIWorker {
+
+        final List<List<AIRequest>> batches = new CopyOnWriteArrayList<>();
+        volatile boolean shutdown;
+
+        @Override
+        public List<CompletableFuture<AIResponse>> submitBatch(List<AIRequest> requests) {
+            assertFalse(shutdown, "Batch sent after the delegate was shut down");
+            batches.add(List.copyOf(requests));
+            return requests.stream().map(this::submitAsync).toList();
+        }
+
+        @Override
+        public CompletableFuture<AIResponse> submitAsync(AIRequest request) {
+            return CompletableFuture.completedFuture(AIResponse.of(request.prompt(), request.id()));
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        List<Integer> batchSizes() {
+            return batches.stream().map(List::size).toList();
+        }
+    }
+}
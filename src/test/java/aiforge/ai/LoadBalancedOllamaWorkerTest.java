@@ -0,0 +1,149 @@
+package aiforge.ai;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadBalancedOllamaWorkerTest {
+
+    private static final String GENERATION = """
+            {"model": "test", "response": "Hello", "done": true, "eval_count": 1}""";
+
+    private final List<MockWebServer> servers = new ArrayList<>();
+    private LoadBalancedOllamaWorker worker;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (worker != null) {
+            worker.shutdown();
+        }
+        for (MockWebServer server : servers) {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    void ejectsBackendAfterConsecutiveServerErrors() throws Exception {
+        StubOllama failing = stub(503);
+        StubOllama working = stub(200);
+        worker = new LoadBalancedOllamaWorker.Builder()
+                .endpoint(failing.url())
+                .endpoint(working.url())
+                .failureThreshold(2)
+                .healthCheckInterval(Duration.ofMinutes(5))
+                .build();
+
+        int succeeded = 0;
+        for (int i = 0; i < 6; i++) {
+            try {
+                assertEquals("Hello", worker.submitAsync(AIRequest.of("system", "prompt")).get(10, TimeUnit.SECONDS).response());
+                succeeded++;
+            } catch (ExecutionException e) {
+                assertInstanceOf(BackendException.class, e.getCause());
+            }
+        }
+
+        BackendStats ejected = worker.backendStats().getFirst();
+        assertFalse(ejected.healthy());
+        assertEquals(2, ejected.failures());
+        assertEquals(4, succeeded);
+        assertTrue(worker.backendStats().get(1).healthy());
+    }
+
+    @Test
+    void returnsBackendToRotationOnceHealthCheckPasses() throws Exception {
+        StubOllama backend = stub(503);
+        worker = new LoadBalancedOllamaWorker.Builder()
+                .endpoint(backend.url())
+                .failureThreshold(1)
+                .healthCheckInterval(Duration.ofMillis(50))
+                .build();
+
+        assertThrows(ExecutionException.class,
+                () -> worker.submitAsync(AIRequest.of("system", "prompt")).get(10, TimeUnit.SECONDS));
+        awaitTrue(() -> !worker.backendStats().getFirst().healthy());
+
+        backend.status = 200;
+        awaitTrue(() -> worker.backendStats().getFirst().healthy());
+        assertEquals("Hello", worker.submitAsync(AIRequest.of("system", "prompt")).get(10, TimeUnit.SECONDS).response());
+    }
+
+    @Test
+    void clientErrorsDoNotEjectBackend() {
+        StubOllama backend = stub(400);
+        worker = new LoadBalancedOllamaWorker.Builder()
+                .endpoint(backend.url())
+                .failureThreshold(2)
+                .healthCheckInterval(Duration.ofMinutes(5))
+                .build();
+
+        for (int i = 0; i < 4; i++) {
+            assertThrows(ExecutionException.class,
+                    () -> worker.submitAsync(AIRequest.of("system", "prompt")).get(10, TimeUnit.SECONDS));
+        }
+
+        BackendStats stats = worker.backendStats().getFirst();
+        assertTrue(stats.healthy());
+        assertEquals(0, stats.failures());
+    }
+
+    private StubOllama stub(int status) {
+        StubOllama stub = new StubOllama(status);
+        servers.add(stub.server);
+        return stub;
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Condition not met within 10 seconds");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Answers both generations and health checks with {@link #status}, a generation when it is 200.
+     */
+    private static class StubOllama extends Dispatcher {
+
+        final MockWebServer server = new MockWebServer();
+        volatile int status;
+
+        StubOllama(int status) {
+            this.status = status;
+            server.setDispatcher(this);
+        }
+
+        String url() {
+            return server.url("/").toString();
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            MockResponse response = new MockResponse().setResponseCode(status);
+            if (status != 200) {
+                return response;
+            }
+            return "/api/version".equals(request.getPath())
+                    ? response.setBody("{\"version\": \"0.0.0\"}")
+                    : response.setBody(GENERATION);
+        }
+    }
+}
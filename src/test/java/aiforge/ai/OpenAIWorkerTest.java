@@ -0,0 +1,83 @@
+package aiforge.ai;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenAIWorkerTest {
+
+    private static final String COMPLETION = """
+            {"choices": [{"index": 0, "message": {"role": "assistant", "content": "Hello"}}]}""";
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private MockWebServer server;
+    private OpenAIWorker worker;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                release.await(10, TimeUnit.SECONDS);
+                return new MockResponse().setHeader("Content-Type", "application/json").setBody(COMPLETION);
+            }
+        });
+        server.start();
+        worker = new OpenAIWorker.Builder("test-key")
+                .baseUrl(server.url("/v1").toString())
+                .maxConcurrentRequests(1)
+                .queueCapacity(1)
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        release.countDown();
+        worker.shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    void rejectsRequestsOnceQueueIsFull() throws Exception {
+        CompletableFuture<AIResponse> running = worker.submitAsync(AIRequest.of("system", "first"));
+        CompletableFuture<AIResponse> queued = worker.submitAsync(AIRequest.of("system", "second"));
+        CompletableFuture<AIResponse> rejected = worker.submitAsync(AIRequest.of("system", "third"));
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> rejected.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, error.getCause());
+        assertTrue(error.getCause().getMessage().contains("at capacity"), error.getCause().getMessage());
+
+        release.countDown();
+        assertEquals("Hello", running.get(10, TimeUnit.SECONDS).response());
+        assertEquals("Hello", queued.get(10, TimeUnit.SECONDS).response());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    void rejectsRequestsAfterShutdown() {
+        worker.shutdown();
+
+        CompletableFuture<AIResponse> rejected = worker.submitAsync(AIRequest.of("system", "late"));
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> rejected.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, error.getCause());
+        assertEquals("Worker has been shut down", error.getCause().getMessage());
+    }
+}